@@ -0,0 +1,407 @@
+package com.inspur.cedric.tetris;
+
+import java.util.Arrays;
+
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+import com.inspur.cedric.tetris.random.SplitMix64;
+
+/**
+ * board stored as one occupancy mask per row plus a compact type array,
+ * so collision is a mask AND, a full line is a single compare and clearing
+ * a line only shifts row references;
+ * type rows can be shared between boards by snapshot, a board copies a shared row before writing it;
+ * the hash is Zobrist-style, XOR of a key per row drawn from its index and mask, so a fill changes it by
+ * two keys and a clear only rehashes the rows that moved
+ */
+public class BitBoard implements Board {
+	// widest board a row mask can hold
+	public static final int MAX_WIDTH = Long.SIZE;
+	private static final ShapeType[] TYPES = ShapeType.values();
+	// indicates type of a garbage cell, after ordinal+1 of every shape type
+	private static final byte GARBAGE = (byte) (TYPES.length + 1);
+	// width & height
+	private final int width;
+	private final int height;
+	// mask of a row whose every column is occupied
+	private final long fullMask;
+	// indicates occupancy of each row, bit i stands for column i
+	private final long[] rows;
+	// indicates shape type of each cell, ordinal+1 of the type, GARBAGE or 0 if empty
+	private final byte[][] types;
+	// indicates which type rows may also be referenced by another board
+	private final boolean[] shared;
+	// indicates height of each column, kept up to date by fill and clearLine
+	private final int[] heights;
+	// indicates how many times board has changed
+	private long version;
+	// indicates XOR of rowHash of every row
+	private long hash;
+	/**
+	 * constructor
+	 */
+	public BitBoard(int width, int height) {
+		if(width < 1 || width > MAX_WIDTH || height < 1) {
+			throw new IllegalArgumentException("illegal board size: " + width + "x" + height);
+		}
+		this.width = width;
+		this.height = height;
+		fullMask = width == MAX_WIDTH ? -1L : (1L << width) - 1;
+		rows = new long[height];
+		types = new byte[height][width];
+		shared = new boolean[height];
+		heights = new int[width];
+	}
+	private BitBoard(BitBoard board) {
+		width = board.width;
+		height = board.height;
+		fullMask = board.fullMask;
+		rows = new long[height];
+		types = new byte[height][];
+		shared = new boolean[height];
+		heights = new int[width];
+		shareFrom(board);
+		// a copy holds the same cells, so it may show the same version
+		version = board.version;
+	}
+	/**
+	 * GETTER: width, height
+	 */
+	@Override
+	public int getWidth() { return width; }
+	@Override
+	public int getHeight() { return height; }
+	@Override
+	public long getVersion() { return version; }
+	@Override
+	public long getHash() { return hash; }
+	/**
+	 * query
+	 */
+	@Override
+	public long getRowMask(int row) {
+		return row < 0 ? 0L : rows[row];
+	}
+	@Override
+	public boolean isOccupied(int row, int col) {
+		return row >= 0 && (rows[row] & (1L << col)) != 0;
+	}
+	@Override
+	public ShapeType getType(int row, int col) {
+		int type = types[row][col];
+		return type == 0 || type == GARBAGE ? null : TYPES[type-1];
+	}
+	@Override
+	public boolean isGarbage(int row, int col) {
+		return types[row][col] == GARBAGE;
+	}
+	@Override
+	public boolean isFullLine(int row) {
+		return rows[row] == fullMask;
+	}
+	@Override
+	public int getColumnHeight(int col) {
+		return heights[col];
+	}
+	@Override
+	public boolean fits(ShapeType shapeType, int orientation, int row, int col) {
+		for(int i = 0; i < 4; i++) {
+			int r = row + shapeType.rowOffset(orientation, i);
+			int c = col + shapeType.colOffset(orientation, i);
+			// NOTE: row can be negative, but column cannot
+			if(r >= height || c >= width || c < 0 || (r >= 0 && (rows[r] & (1L << c)) != 0)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	/**
+	 * a shape whose blocks are all above the surface of their columns lands on
+	 * the nearest surface, so the distance comes from the height profile alone;
+	 * a shape tucked under an overhang falls back to stepping down row by row
+	 */
+	@Override
+	public int dropDistance(ShapeType shapeType, int orientation, int row, int col) {
+		int distance = Integer.MAX_VALUE;
+		for(int i = 0; i < 4; i++) {
+			int r = row + shapeType.rowOffset(orientation, i);
+			int c = col + shapeType.colOffset(orientation, i);
+			int top = height - heights[c];
+			if(r >= top) {
+				return stepDistance(shapeType, orientation, row, col);
+			}
+			distance = Math.min(distance, top - 1 - r);
+		}
+		return distance;
+	}
+	private int stepDistance(ShapeType shapeType, int orientation, int row, int col) {
+		for(int distance = 0; ; distance++) {
+			for(int i = 0; i < 4; i++) {
+				int r = row + distance + 1 + shapeType.rowOffset(orientation, i);
+				int c = col + shapeType.colOffset(orientation, i);
+				if(r == height || isOccupied(r, c)) {
+					return distance;
+				}
+			}
+		}
+	}
+	/**
+	 * action
+	 */
+	@Override
+	public void fill(int row, int col, ShapeType shapeType) {
+		fill(row, col, (byte) (shapeType.ordinal()+1));
+	}
+	@Override
+	public void fillGarbage(int row, int col) {
+		fill(row, col, GARBAGE);
+	}
+	private void fill(int row, int col, byte type) {
+		long mask = rows[row];
+		rows[row] |= 1L << col;
+		hash ^= rowHash(row, mask) ^ rowHash(row, rows[row]);
+		writableRow(row)[col] = type;
+		heights[col] = Math.max(heights[col], height - row);
+		++version;
+	}
+	@Override
+	public void clearLine(int row) {
+		++version;
+		// reuse the cleared row as the new top line, unless another board still reads it
+		byte[] cleared = types[row];
+		boolean sharedRow = shared[row];
+		hash ^= hashOf(row);
+		System.arraycopy(rows, 0, rows, 1, row);
+		System.arraycopy(types, 0, types, 1, row);
+		System.arraycopy(shared, 0, shared, 1, row);
+		rows[0] = 0L;
+		hash ^= hashOf(row);
+		if(sharedRow) {
+			types[0] = new byte[width];
+		} else {
+			types[0] = cleared;
+			Arrays.fill(cleared, (byte) 0);
+		}
+		shared[0] = false;
+		// a column whose top cell is below the cleared row keeps its height, the row need not be full;
+		// any other column loses one row, and drops to its next cell below if its top cell was in the cleared row
+		for(int col = 0; col < width; col++) {
+			if(height - heights[col] > row) {
+				continue;
+			}
+			int h = heights[col] - 1;
+			while(h > 0 && (rows[height-h] & (1L << col)) == 0) {
+				--h;
+			}
+			heights[col] = h;
+		}
+	}
+	@Override
+	public boolean addGarbage(int lines, int hole) {
+		lines = Math.min(lines, height);
+		if(lines <= 0) {
+			return true;
+		}
+		++version;
+		boolean inside = true;
+		for(int row = 0; row < lines; row++) {
+			inside &= rows[row] == 0L;
+		}
+		// rotate rows up, the rows pushed off the top are reused as garbage at the bottom
+		byte[][] pushed = Arrays.copyOf(types, lines);
+		boolean[] pushedShared = Arrays.copyOf(shared, lines);
+		System.arraycopy(rows, lines, rows, 0, height - lines);
+		System.arraycopy(types, lines, types, 0, height - lines);
+		System.arraycopy(shared, lines, shared, 0, height - lines);
+		long mask = fullMask & ~(1L << hole);
+		for(int i = 0; i < lines; i++) {
+			int row = height - lines + i;
+			rows[row] = mask;
+			types[row] = pushedShared[i] ? new byte[width] : pushed[i];
+			shared[row] = false;
+			Arrays.fill(types[row], GARBAGE);
+			types[row][hole] = 0;
+		}
+		for(int col = 0; col < width; col++) {
+			int h = height;
+			while(h > 0 && (rows[height-h] & (1L << col)) == 0) {
+				--h;
+			}
+			heights[col] = h;
+		}
+		// every row has moved
+		hash = hashOf(height - 1);
+		return inside;
+	}
+	/**
+	 * fill the cells of a shape, returns false if part of it is above the board
+	 */
+	public boolean place(ShapeType shapeType, int orientation, int row, int col) {
+		boolean inside = true;
+		for(int i = 0; i < 4; i++) {
+			int r = row + shapeType.rowOffset(orientation, i);
+			if(r < 0) {
+				inside = false;
+			} else {
+				fill(r, col + shapeType.colOffset(orientation, i), shapeType);
+			}
+		}
+		return inside;
+	}
+	/**
+	 * clear every full line between topRow and bottomRow (both inclusive) in one pass, returns how many were cleared;
+	 * rows from the lowest full line up are compacted downwards, so each surviving row moves once,
+	 * and the cleared rows end up, emptied, on top
+	 */
+	public int clearFullLines(int topRow, int bottomRow) {
+		int lowest = -1, lines = 0;
+		for(int row = bottomRow; row >= Math.max(topRow, 0); row--) {
+			if(rows[row] == fullMask) {
+				lowest = Math.max(lowest, row);
+				++lines;
+			}
+		}
+		if(lines == 0) {
+			return 0;
+		}
+		++version;
+		hash ^= hashOf(lowest);
+		// swap rows instead of assigning them, so the cleared type rows are moved up instead of lost
+		int to = lowest;
+		for(int row = lowest; row >= 0; row--) {
+			if(row >= topRow && rows[row] == fullMask) {
+				continue;
+			}
+			if(to != row) {
+				rows[to] = rows[row];
+				byte[] typeRow = types[to];
+				types[to] = types[row];
+				types[row] = typeRow;
+				boolean sharedRow = shared[to];
+				shared[to] = shared[row];
+				shared[row] = sharedRow;
+			}
+			--to;
+		}
+		for(int row = 0; row < lines; row++) {
+			rows[row] = 0L;
+			if(shared[row]) {
+				types[row] = new byte[width];
+				shared[row] = false;
+			} else {
+				Arrays.fill(types[row], (byte) 0);
+			}
+		}
+		hash ^= hashOf(lowest);
+		// every column loses one cell per line, a column whose top was in a cleared line drops further
+		for(int col = 0; col < width; col++) {
+			int h = heights[col] - lines;
+			while(h > 0 && (rows[height-h] & (1L << col)) == 0) {
+				--h;
+			}
+			heights[col] = h;
+		}
+		return lines;
+	}
+	/**
+	 * make this board a copy of another one of the same size
+	 */
+	public void copyFrom(Board board) {
+		if(board.getWidth() != width || board.getHeight() != height) {
+			throw new IllegalArgumentException("cannot copy a board of different size");
+		}
+		if(board instanceof BitBoard) {
+			BitBoard bitBoard = (BitBoard) board;
+			System.arraycopy(bitBoard.rows, 0, rows, 0, height);
+			System.arraycopy(bitBoard.heights, 0, heights, 0, width);
+			hash = bitBoard.hash;
+			for(int row = 0; row < height; row++) {
+				System.arraycopy(bitBoard.types[row], 0, writableRow(row), 0, width);
+			}
+		} else {
+			clear();
+			for(int row = 0; row < height; row++) {
+				for(int col = 0; col < width; col++) {
+					ShapeType shapeType = board.getType(row, col);
+					if(shapeType != null) {
+						fill(row, col, shapeType);
+					} else if(board.isGarbage(row, col)) {
+						fillGarbage(row, col);
+					}
+				}
+			}
+		}
+		// never back to an earlier number, another board may have gone on from it with other cells
+		version = Math.max(version, board.getVersion()) + 1;
+	}
+	/**
+	 * copy of this board in O(height): the row masks and column heights, a few hundred bytes even on
+	 * the largest board, are copied, and only the type rows, most of the cells, are shared until either board
+	 * writes them; sharing the masks as well would only move the copy to the first fill after each snapshot
+	 */
+	public BitBoard snapshot() {
+		return new BitBoard(this);
+	}
+	/**
+	 * whether the row holds the same cells as the row of another board; a type row both boards
+	 * still share is the same one without comparing a cell
+	 */
+	public boolean rowEquals(BitBoard board, int row) {
+		return rows[row] == board.rows[row] && (types[row] == board.types[row] || Arrays.equals(types[row], board.types[row]));
+	}
+	/**
+	 * make this board a copy of another one of the same size, sharing its type rows, in O(height) as snapshot;
+	 * restores a game, and puts the scratch boards of a move search back to the board searched from
+	 */
+	public void shareFrom(BitBoard board) {
+		if(board.width != width || board.height != height) {
+			throw new IllegalArgumentException("cannot copy a board of different size");
+		}
+		System.arraycopy(board.rows, 0, rows, 0, height);
+		System.arraycopy(board.types, 0, types, 0, height);
+		System.arraycopy(board.heights, 0, heights, 0, width);
+		// rows of a snapshot are all shared already, so restoring from one never writes to it
+		for(int row = 0; row < height; row++) {
+			if(!board.shared[row]) {
+				board.shared[row] = true;
+			}
+		}
+		Arrays.fill(shared, true);
+		version = Math.max(version, board.version) + 1;
+		hash = board.hash;
+	}
+	// key of a row, an empty row has none, so an empty board hashes to 0
+	private static long rowHash(int row, long mask) {
+		return mask == 0L ? 0L : SplitMix64.mix(mask ^ (row + 1) * 0x9E3779B97F4A7C15L);
+	}
+	// XOR of keys of rows 0 to lastRow
+	private long hashOf(int lastRow) {
+		long h = 0L;
+		for(int row = 0; row <= lastRow; row++) {
+			h ^= rowHash(row, rows[row]);
+		}
+		return h;
+	}
+	// copies a shared type row first, so that other boards never see the write
+	private byte[] writableRow(int row) {
+		if(shared[row]) {
+			types[row] = types[row].clone();
+			shared[row] = false;
+		}
+		return types[row];
+	}
+	@Override
+	public void clear() {
+		for(int row = 0; row < height; row++) {
+			rows[row] = 0L;
+			if(shared[row]) {
+				types[row] = new byte[width];
+				shared[row] = false;
+			} else {
+				Arrays.fill(types[row], (byte) 0);
+			}
+		}
+		Arrays.fill(heights, 0);
+		hash = 0L;
+		++version;
+	}
+}
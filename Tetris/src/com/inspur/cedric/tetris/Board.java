@@ -0,0 +1,47 @@
+package com.inspur.cedric.tetris;
+
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+
+/**
+ * playfield of a game, rows are counted from top (0) to bottom (height-1),
+ * rows above the board (negative) are always treated as empty
+ */
+public interface Board {
+	/**
+	 * GETTER: width, height
+	 */
+	int getWidth();
+	int getHeight();
+	// changes whenever a cell of the board changes and never goes back, not even on restore, e.g. to tell whether a cached picture is stale
+	long getVersion();
+	// hash of which cells are occupied, equal on boards of equal occupancy whatever their history, e.g. to cache evaluations
+	long getHash();
+	/**
+	 * query
+	 */
+	// bit i of the mask is set if column i of the row is occupied
+	long getRowMask(int row);
+	boolean isOccupied(int row, int col);
+	// type of shape which the cell was packed from, null if the cell is empty or garbage
+	ShapeType getType(int row, int col);
+	// whether the cell is part of a garbage line, which no shape was packed from
+	boolean isGarbage(int row, int col);
+	boolean isFullLine(int row);
+	// number of rows from bottom up to the highest occupied cell of the column, 0 if the column is empty
+	int getColumnHeight(int col);
+	// whether a shape of the type fits the board in the orientation with its pivot at (row, col)
+	boolean fits(ShapeType shapeType, int orientation, int row, int col);
+	// how many rows a shape of the type can fall from pivot position (row, col) in the orientation
+	int dropDistance(ShapeType shapeType, int orientation, int row, int col);
+	/**
+	 * action
+	 */
+	void fill(int row, int col, ShapeType shapeType);
+	// fill the cell as garbage, e.g. when a stored board is read back
+	void fillGarbage(int row, int col);
+	// remove the row, full or not, and shift every row above it down by one
+	void clearLine(int row);
+	// push lines of garbage, full except for the hole column, in under the stack; false if cells were pushed off the top
+	boolean addGarbage(int lines, int hole);
+	void clear();
+}
@@ -0,0 +1,46 @@
+package com.inspur.cedric.tetris;
+
+/**
+ * what locking a shape did to the board, for scoring
+ */
+public class ClearResult {
+	// indicates result of a lock that erased nothing and was no T-spin
+	public static final ClearResult NONE = new ClearResult(0, TSpin.NONE, 0);
+	// indicates how many lines were erased
+	private final int lines;
+	private final TSpin tSpin;
+	// indicates how many locks in a row erased lines before this one, 0 unless lines were erased
+	private final int combo;
+	/**
+	 * constructor
+	 */
+	public ClearResult(int lines, TSpin tSpin, int combo) {
+		this.lines = lines;
+		this.tSpin = tSpin;
+		this.combo = combo;
+	}
+	/**
+	 * GETTER: lines, tSpin, combo
+	 */
+	public int getLines() { return lines; }
+	public TSpin getTSpin() { return tSpin; }
+	public int getCombo() { return combo; }
+	/**
+	 * toString override
+	 */
+	public String toString() {
+		StringBuilder sBuilder = new StringBuilder();
+		sBuilder.append("clear: ").append(lines).append(" lines, t-spin ").append(tSpin).append(", combo ").append(combo);
+		return sBuilder.toString();
+	}
+	/**********************************************************/
+	/**
+	 * a T shape whose last move was a rotation and that has 3 of the 4 cells diagonal to its pivot
+	 * occupied (walls and floor count) is a T-spin; a full one if both cells in front of it are among them
+	 */
+	public enum TSpin {
+		NONE,
+		MINI,
+		FULL;
+	}
+}
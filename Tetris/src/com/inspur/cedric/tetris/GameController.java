@@ -3,117 +3,151 @@ package com.inspur.cedric.tetris;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.FileOutputStream;
+import java.io.IOException;
 
 import javax.swing.JFrame;
-import javax.swing.SwingUtilities;
 
+import com.inspur.cedric.tetris.GameLoop.Input;
 import com.inspur.cedric.tetris.GameModel.GameState;
+import com.inspur.cedric.tetris.ai.AIPlayer;
+import com.inspur.cedric.tetris.metrics.Metrics;
+import com.inspur.cedric.tetris.replay.ReplayRecorder;
 
 public class GameController extends JFrame{
 	/**
 	 * default UID
 	 */
 	private static final long serialVersionUID = 1L;
-	// indicates which model this controller sends events to
-	private GameModel gameModel;
+	// indicates which loop this controller sends inputs to
+	private GameLoop gameLoop;
 	private GameView gameView;
 	/**
 	 * constructor
 	 */
-	public GameController(GameView gameView, GameModel gameModel) {
+	public GameController(GameView gameView, GameLoop gameLoop) {
 		super("Tetris");
-		this.setVisible(true);
-		this.setSize(543, 595);
-		this.setLocationRelativeTo(null);
 		this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		this.gameView = gameView;
-		this.gameModel = gameModel;
+		this.gameLoop = gameLoop;
 		this.add(gameView);
+		// window fits the view, whose size follows the board of the rules
+		this.setResizable(false);
+		this.pack();
+		this.setLocationRelativeTo(null);
+		this.setVisible(true);
 	}
 	/**
 	 * game entrance
 	 */
 	public void init() {
-		// initialize keyListener
+		// initialize keyListener, it only posts inputs, the loop applies them on its own thread
 		KeyListener keyListener = new KeyAdapter() {
 			@Override
 			public void keyPressed(KeyEvent e) {
-				synchronized (gameModel) {
-					int keyCode = e.getKeyCode();
-					switch (keyCode) {
-					case KeyEvent.VK_P:
-						if(gameModel.getGameState() == GameState.RUNNING) {
-							gameModel.setGameState(GameState.PAUSING);
-						}
-						break;
-					case KeyEvent.VK_C:
-						if(gameModel.getGameState() == GameState.PAUSING) {
-							gameModel.setGameState(GameState.RUNNING);
-						}
-						break;
-					case KeyEvent.VK_S:
-						gameModel.reset();
-						gameModel.setGameState(GameState.RUNNING);
-						break;
-					case KeyEvent.VK_Q:
-						System.exit(0);
-					default:
-						if(gameModel.getGameState() == GameState.RUNNING) {
-							switch(keyCode) {
-							case KeyEvent.VK_UP:
-									gameModel.rotate();
-								break;
-							case KeyEvent.VK_DOWN:
-									gameModel.moveDown();
-								break;
-							case KeyEvent.VK_LEFT:
-									gameModel.moveLeft();
-								break;
-							case KeyEvent.VK_RIGHT:
-									gameModel.moveRight();
-								break;
-							case KeyEvent.VK_SPACE:
-									gameModel.moveDownToBottom();
-								break;
-							}
-							break;
-						}
-					}
-					gameView.repaint();
+				if(e.getKeyCode() == KeyEvent.VK_Q) {
+					System.exit(0);
 				}
+				post(e.getKeyCode(), true);
+			}
+			@Override
+			public void keyReleased(KeyEvent e) {
+				post(e.getKeyCode(), false);
 			}
 		};
 		this.addKeyListener(keyListener);
 		this.requestFocus();
-		// start auto down thread
-		Timer timer = new Timer();
-		timer.schedule(new TimerTask() {
-			@Override
-			public void run() {
-				synchronized (gameModel) {
-					if(gameModel.getGameState() == GameState.RUNNING) {
-						gameModel.moveDown();
-						SwingUtilities.invokeLater(new Runnable() {
-							@Override
-							public void run() {
-								gameView.repaint();
-							}
-						});
-					}
-				}
-			}
-		}, 0, 1000);
+		// start game loop
+		gameLoop.start();
 	}
+	private void post(int keyCode, boolean pressed) {
+		Input input = null;
+		switch (keyCode) {
+		case KeyEvent.VK_P:
+			input = Input.PAUSE;
+			break;
+		case KeyEvent.VK_C:
+			input = Input.CONTINUE;
+			break;
+		case KeyEvent.VK_S:
+			input = Input.START;
+			break;
+		case KeyEvent.VK_A:
+			input = Input.AUTO_PLAY;
+			break;
+		case KeyEvent.VK_UP:
+			input = Input.ROTATE;
+			break;
+		case KeyEvent.VK_DOWN:
+			input = Input.SOFT_DROP;
+			break;
+		case KeyEvent.VK_LEFT:
+			input = Input.LEFT;
+			break;
+		case KeyEvent.VK_RIGHT:
+			input = Input.RIGHT;
+			break;
+		case KeyEvent.VK_SPACE:
+			input = Input.HARD_DROP;
+			break;
+		case KeyEvent.VK_SHIFT:
+			input = Input.HOLD;
+			break;
+		default:
+			break;
+		}
+		if(input != null) {
+			gameLoop.post(input, pressed);
+		}
+	}
+	/**
+	 * start a game by the rules of system properties, e.g. -Dtetris.width=16, see RuleSet.fromProperties
+	 */
 	public static void run() {
-		GameModel gameModel = new GameModel();
-		GameView gameView = new GameView(gameModel);
-		GameController gameController = new GameController(gameView, gameModel);
+		RuleSet ruleSet = RuleSet.fromProperties(System.getProperties());
+		// -Dtetris.metrics=true shows metrics in JMX, see Metrics.start
+		Metrics.start();
+		final GameModel gameModel = new GameModel(ruleSet, 42);
 		gameModel.setGameState(GameState.RUNNING);
+		final GameView gameView = new GameView(ruleSet, gameModel.snapshot());
+		final GameLoop gameLoop = new GameLoop(gameModel, new GameLoop.Listener() {
+			@Override
+			public void frame(GameSnapshot snapshot) {
+				gameView.publish(snapshot);
+			}
+		}, new AIPlayer());
+		// -Dtetris.replay=<file> records the session
+		String replayFile = System.getProperty("tetris.replay");
+		if(replayFile != null) {
+			record(gameModel, gameLoop, replayFile);
+		}
+		GameController gameController = new GameController(gameView, gameLoop);
 		gameController.init();
 	}
+	private static void record(final GameModel gameModel, final GameLoop gameLoop, String replayFile) {
+		final ReplayRecorder recorder;
+		try {
+			recorder = new ReplayRecorder(new FileOutputStream(replayFile), gameModel.getRuleSet(), gameModel.getSeed(),
+					gameLoop::getTicks);
+		} catch(IOException e) {
+			throw new RuntimeException("cannot record replay to " + replayFile);
+		}
+		gameModel.setObserver(recorder);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				// loop is stopped first, so model no longer changes while the last checkpoint is written
+				gameLoop.stop();
+				try {
+					recorder.checkpoint(gameModel);
+					recorder.close();
+				} catch(IOException e) {
+					System.err.println("cannot finish replay: " + e.getMessage());
+				}
+			}
+		});
+	}
 	public static void main(String[] args) {
 		GameController.run();
 	}
-}
\ No newline at end of file
+}
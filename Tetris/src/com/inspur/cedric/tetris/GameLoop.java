@@ -0,0 +1,306 @@
+package com.inspur.cedric.tetris;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.inspur.cedric.tetris.GameModel.GameState;
+import com.inspur.cedric.tetris.metrics.Metrics;
+import com.inspur.cedric.tetris.sim.MovePolicy;
+
+/**
+ * fixed-timestep loop that owns a model: only the loop thread touches the model,
+ * other threads post inputs and receive immutable snapshots
+ */
+public class GameLoop implements Runnable, InputQueue.Handler {
+	// indicates how many ticks there are in one second
+	public static final int TICKS_PER_SECOND = 60;
+	private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1) / TICKS_PER_SECOND;
+	// indicates most ticks to run at once after a stall, older ones are dropped
+	private static final int MAX_CATCH_UP = 5;
+	private static final Input[] INPUTS = Input.values();
+	// indicates how many inputs may wait for the loop
+	private static final int INPUT_CAPACITY = 256;
+	// indicates ticks a grounded shape waits before it is packed
+	private static final int LOCK_DELAY = 30;
+	// indicates how many moves may restart lock delay of a shape
+	private static final int MAX_LOCK_RESETS = 15;
+	// delayed auto shift: ticks a held key waits before repeating, then ticks between repeats
+	private static final int DAS = 10;
+	private static final int ARR = 2;
+	// indicates which model this loop owns
+	private final GameModel gameModel;
+	// indicates who receives a snapshot whenever the state changes
+	private final Listener listener;
+	// indicates who plays when auto play is on, may be null
+	private final MovePolicy autoPlayer;
+	// inputs posted by the input thread, drained as soon as the loop wakes up
+	private final InputQueue inputs;
+	private volatile boolean running;
+	private volatile Thread thread;
+	// indicates how many ticks have run, written by loop thread only
+	private volatile long ticks;
+	// input latency: time from post to being applied on loop thread, written by loop thread only
+	private volatile long appliedInputs;
+	private volatile long totalInputNanos;
+	private volatile long maxInputNanos;
+	// indicates inputs dropped because the queue was full, written by input thread only
+	private volatile long droppedInputs;
+	/**
+	 * state below is touched by loop thread only
+	 */
+	private boolean autoPlay;
+	private final boolean[] held;
+	// indicates direction of horizontal shift (-1, 0, 1) and ticks it has been held
+	private int shiftDirection;
+	private int shiftTicks;
+	private int gravityTicks;
+	private int lockTicks;
+	private int lockResets;
+	// indicates whether model changed since last snapshot
+	private boolean changed;
+	/**
+	 * constructor
+	 */
+	public GameLoop(GameModel gameModel, Listener listener, MovePolicy autoPlayer) {
+		this.gameModel = gameModel;
+		this.listener = listener;
+		this.autoPlayer = autoPlayer;
+		inputs = new InputQueue(INPUT_CAPACITY);
+		held = new boolean[INPUTS.length];
+		changed = true;
+	}
+	/**
+	 * GETTER: ticks, appliedInputs, droppedInputs, input latency
+	 */
+	public long getTicks() { return ticks; }
+	public long getAppliedInputs() { return appliedInputs; }
+	public long getDroppedInputs() { return droppedInputs; }
+	public long getMaxInputNanos() { return maxInputNanos; }
+	public double getAverageInputNanos() {
+		long applied = appliedInputs;
+		return applied == 0 ? 0 : (double) totalInputNanos / applied;
+	}
+	/**
+	 * post an input and wake the loop up; all inputs must be posted from one thread, e.g. EDT
+	 */
+	public void post(Input input, boolean pressed) {
+		if(!inputs.offer(input.ordinal() << 1 | (pressed ? 1 : 0), System.nanoTime())) {
+			droppedInputs = droppedInputs + 1;
+			return;
+		}
+		Thread loopThread = thread;
+		if(loopThread != null) {
+			LockSupport.unpark(loopThread);
+		}
+	}
+	public synchronized void start() {
+		if(thread == null) {
+			running = true;
+			thread = new Thread(this, "game-loop");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+	/**
+	 * stop the loop and wait until its thread has finished the current tick
+	 */
+	public synchronized void stop() {
+		running = false;
+		if(thread != null) {
+			LockSupport.unpark(thread);
+			if(thread != Thread.currentThread()) {
+				try {
+					thread.join();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			thread = null;
+		}
+	}
+	// apply posted inputs, on the loop thread only, as the queue has a single consumer
+	private void drainInputs() {
+		inputs.drain(this);
+	}
+	@Override
+	public void input(int command, long timestamp) {
+		apply(INPUTS[command >> 1], (command & 1) != 0);
+		long latency = System.nanoTime() - timestamp;
+		appliedInputs = appliedInputs + 1;
+		totalInputNanos = totalInputNanos + latency;
+		if(latency > maxInputNanos) {
+			maxInputNanos = latency;
+		}
+		if(Metrics.ENABLED) {
+			Metrics.INPUT_LATENCY.record(latency);
+		}
+	}
+	/**
+	 * loop body: apply inputs, run every tick that is due, publish, then sleep until
+	 * the next tick or until an input wakes the loop up
+	 */
+	@Override
+	public void run() {
+		long next = System.nanoTime();
+		while(running) {
+			drainInputs();
+			int ticks = 0;
+			while(System.nanoTime() - next >= 0 && ticks < MAX_CATCH_UP) {
+				long start = Metrics.now();
+				tick();
+				if(Metrics.ENABLED) {
+					Metrics.TICK.recordSince(start);
+				}
+				next += TICK_NANOS;
+				++ticks;
+			}
+			if(ticks == MAX_CATCH_UP) {
+				next = System.nanoTime();
+			}
+			if(changed) {
+				changed = false;
+				listener.frame(gameModel.snapshot());
+			}
+			LockSupport.parkNanos(next - System.nanoTime());
+		}
+	}
+	/**
+	 * advance game by one tick
+	 */
+	public void tick() {
+		ticks = ticks + 1;
+		drainInputs();
+		if(gameModel.getGameState() != GameState.RUNNING) {
+			return;
+		}
+		if(shiftDirection != 0 && ++shiftTicks >= DAS && (shiftTicks - DAS) % ARR == 0) {
+			shift(shiftDirection);
+		}
+		boolean softDrop = held[Input.SOFT_DROP.ordinal()];
+		if(++gravityTicks >= gameModel.getGravity() || softDrop) {
+			gravityTicks = 0;
+			fall(softDrop);
+		} else if(!gameModel.canMoveDown()) {
+			fall(false);
+		}
+	}
+	private void apply(Input input, boolean pressed) {
+		boolean repeated = pressed && held[input.ordinal()];
+		held[input.ordinal()] = pressed;
+		// keyboards repeat a held key by themselves, repeat is done by DAS instead
+		if(repeated || !pressed) {
+			if(!pressed && (input == Input.LEFT || input == Input.RIGHT)) {
+				shiftDirection = held[Input.LEFT.ordinal()] ? -1 : held[Input.RIGHT.ordinal()] ? 1 : 0;
+				shiftTicks = 0;
+			}
+			return;
+		}
+		changed = true;
+		GameState gameState = gameModel.getGameState();
+		switch (input) {
+		case PAUSE:
+			if(gameState == GameState.RUNNING) {
+				gameModel.setGameState(GameState.PAUSING);
+			}
+			break;
+		case CONTINUE:
+			if(gameState == GameState.PAUSING) {
+				gameModel.setGameState(GameState.RUNNING);
+			}
+			break;
+		case START:
+			gameModel.reset();
+			gameModel.setGameState(GameState.RUNNING);
+			gravityTicks = lockTicks = lockResets = 0;
+			break;
+		case AUTO_PLAY:
+			autoPlay = autoPlayer != null && !autoPlay;
+			break;
+		default:
+			if(gameState == GameState.RUNNING) {
+				switch (input) {
+				case LEFT:
+				case RIGHT:
+					shiftDirection = input == Input.LEFT ? -1 : 1;
+					shiftTicks = 0;
+					shift(shiftDirection);
+					break;
+				case ROTATE:
+					gameModel.rotate();
+					resetLockDelay();
+					break;
+				case HARD_DROP:
+					gameModel.moveDownToBottom();
+					newShape();
+					break;
+				case HOLD:
+					gameModel.hold();
+					newShape();
+					break;
+				default:
+					break;
+				}
+			}
+			break;
+		}
+	}
+	private void shift(int direction) {
+		if(direction < 0) {
+			gameModel.moveLeft();
+		} else {
+			gameModel.moveRight();
+		}
+		resetLockDelay();
+		changed = true;
+	}
+	// one step of gravity, a grounded shape is packed once lock delay is over
+	private void fall(boolean softDrop) {
+		if(autoPlay) {
+			autoPlayer.play(gameModel);
+			newShape();
+		} else if(gameModel.canMoveDown()) {
+			if(softDrop) {
+				gameModel.softDrop();
+			} else {
+				gameModel.moveDown();
+			}
+			lockTicks = 0;
+		} else if(++lockTicks >= LOCK_DELAY) {
+			gameModel.moveDown();
+			newShape();
+		} else {
+			return;
+		}
+		changed = true;
+	}
+	private void resetLockDelay() {
+		if(lockTicks > 0 && lockResets < MAX_LOCK_RESETS) {
+			lockTicks = 0;
+			++lockResets;
+		}
+	}
+	private void newShape() {
+		gravityTicks = lockTicks = lockResets = 0;
+		changed = true;
+	}
+	/**********************************************************/
+	public enum Input {
+		LEFT,
+		RIGHT,
+		SOFT_DROP,
+		ROTATE,
+		HARD_DROP,
+		PAUSE,
+		CONTINUE,
+		START,
+		AUTO_PLAY,
+		HOLD
+	}
+	/**********************************************************/
+	public interface Listener {
+		/**
+		 * called on loop thread with the state after each change
+		 */
+		void frame(GameSnapshot snapshot);
+	}
+}
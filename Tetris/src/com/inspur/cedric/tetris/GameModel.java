@@ -1,84 +1,130 @@
 package com.inspur.cedric.tetris;
 
-import java.util.Arrays;
-import java.util.Comparator;
-
+import com.inspur.cedric.tetris.ClearResult.TSpin;
 import com.inspur.cedric.tetris.GameShape.Block;
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+import com.inspur.cedric.tetris.metrics.Metrics;
+import com.inspur.cedric.tetris.random.SplitMix64;
 
 public class GameModel {
-	// width & height
-	public static final int WIDTH = 10;
-	public static final int HEIGHT = 20;
+	// indicates rules of this game
+	private final RuleSet ruleSet;
 	// indicates current shape in game
 	private GameShape currentShape;
 	// indicates next shape in game
 	private GameShape nextShape;
-	// indicates total score in game
-	private int totalScores;
+	// indicates scores, erased lines and level of game, told about every lock and drop
+	private final ScoringEngine scoring;
+	// indicates how many shapes have been packed into board
+	private int totalPieces;
+	// indicates whether last move of current shape was a rotation, for T-spins
+	private boolean rotated;
+	// indicates how many locks in a row have erased lines
+	private int combo;
+	// indicates what the last lock did
+	private ClearResult lastClear;
+	// indicates garbage lines sent by an opponent that have not been pushed in yet
+	private int pendingGarbage;
 	// indicates state of game
 	private GameState gameState;
 	// indicates the board which gaming on
-	private Block[][] board;
+	final BitBoard board;
+	// root random stream of this game, every other stream is split from it
+	final SplitMix64 random;
+	// coming shapes, drawn from a source owned by this game only
+	final PieceQueue queue;
+	// indicates shape put aside by hold, null if none, and whether hold has been used since last lock
+	private ShapeType holdType;
+	private boolean holdUsed;
+	// indicates which seed the source of shapes started from
+	private final long seed;
+	// indicates who is told about every action, may be null
+	private Observer observer;
 	/**
 	 * constructor
 	 */
 	public GameModel() {
-		currentShape = GameShape.randomOne();
-		nextShape = GameShape.randomOne();
-		totalScores = 0;
+		this(42);
+	}
+	public GameModel(long seed) {
+		this(RuleSet.CLASSIC, seed);
+	}
+	public GameModel(RuleSet ruleSet, long seed) {
+		this.ruleSet = ruleSet;
+		this.seed = seed;
+		random = new SplitMix64(seed);
+		queue = new PieceQueue(ruleSet.getRandomizer().create(random.split()), Math.max(ruleSet.getPreviews(), 1));
+		currentShape = new GameShape(queue.poll(), ruleSet.getSpawnShift());
+		nextShape = new GameShape(queue.peek(0), ruleSet.getSpawnShift());
+		scoring = new ScoringEngine(ruleSet);
+		lastClear = ClearResult.NONE;
 		gameState = GameState.READY;
-		board = new Block[HEIGHT][WIDTH];
+		board = new BitBoard(ruleSet.getWidth(), ruleSet.getHeight());
 	}
 	/**
-	 * GETTER & SETTER: currentShape, nextShape, totalScore, gameState
+	 * GETTER & SETTER: ruleSet, seed, observer, currentShape, nextShape, previews, holdType, holdUsed, totalScore, totalLines, totalPieces, lastClear, pendingGarbage, level, gravity, scoring, gameState;
+	 * there is no setter of board, shapes or scores, restore a snapshot instead
 	 */
+	public RuleSet getRuleSet() { return ruleSet; }
+	public long getSeed() { return seed; }
+	public Observer getObserver() { return observer; }
+	public void setObserver(Observer observer) { this.observer = observer; }
 	public GameShape getCurrentShape() { return currentShape; }
-	public void setCurrentShape(GameShape currentShape) { this.currentShape = currentShape; }
 	public GameShape getNextShape() { return nextShape; }
-	public void setNextShape(GameShape nextShape) { this.nextShape = nextShape; }
-	public int getTotalScores() { return totalScores; }
-	public void setTotalScores(int totalScores) { this.totalScores = totalScores; }
+	public int getPreviewCount() { return queue.getDepth(); }
+	// coming shape at the position, 0 is next shape
+	public ShapeType getPreview(int position) { return queue.peek(position); }
+	public ShapeType getHoldType() { return holdType; }
+	public boolean isHoldUsed() { return holdUsed; }
+	public int getTotalScores() { return scoring.getScores(); }
+	public int getTotalLines() { return scoring.getLines(); }
+	public int getTotalPieces() { return totalPieces; }
+	public ClearResult getLastClear() { return lastClear; }
+	public int getPendingGarbage() { return pendingGarbage; }
+	// level rises every 10 erased lines
+	public int getLevel() { return scoring.getLevel(); }
+	// ticks per row at current level
+	public int getGravity() { return scoring.getGravity(); }
+	public ScoringEngine getScoring() { return scoring; }
 	public GameState getGameState() { return gameState; }
 	public void setGameState(GameState gameState) { this.gameState = gameState; }
-	public Block[][] getBoard() { return board; }
-	public void setBoard(Block[][] board) { this.board = board; }
+	public Board getBoard() { return board; }
 	/**
-	 * condition
+	 * immutable copy of current state, e.g. for rendering on another thread
 	 */
-	private boolean canMoveDown() {
-		Block[] blocks = currentShape.blocks;
-		for(Block block : blocks) {
-			int row = block.getRow(), col = block.getCol();
-			if(row == HEIGHT-1 || (row >= -1 && board[row+1][col] != null)) {
-				return false;
-			}
-		}
-		return true;
+	public GameSnapshot snapshot() {
+		// state without a getter is handed over, so no other class reaches into the model
+		return new GameSnapshot(this, rotated, combo);
 	}
-	private boolean isOutOfBounds() {
-		Block[] blocks = currentShape.blocks;
-		for(Block block : blocks) {
-			int row = block.getRow(), col = block.getCol();
-			// NOTE: row can be negative, but column cannot
-			if(row > HEIGHT-1 || col > WIDTH-1 || col < 0) {
-				return true;
-			}
-		}
-		return false;
+	/**
+	 * bring the game back to an earlier snapshot of it, e.g. to undo
+	 * a move or to try moves during a search; rows are shared again, so no cell is copied,
+	 * and observers are not told
+	 */
+	public void restore(GameSnapshot snapshot) {
+		board.shareFrom(snapshot.board);
+		currentShape.restore(snapshot.currentType, snapshot.currentOrientation, snapshot.currentRow, snapshot.currentCol);
+		queue.restore(snapshot.previews, snapshot.dealt, snapshot.generator.copy());
+		nextShape.respawn(queue.peek(0), 0);
+		holdType = snapshot.holdType;
+		holdUsed = snapshot.holdUsed;
+		scoring.restore(snapshot.totalScores, snapshot.totalLines, snapshot.backToBack, snapshot.lastPoints);
+		totalPieces = snapshot.totalPieces;
+		rotated = snapshot.rotated;
+		combo = snapshot.combo;
+		lastClear = snapshot.lastClear;
+		pendingGarbage = snapshot.pendingGarbage;
+		gameState = snapshot.gameState;
+		random.setState(snapshot.randomState);
 	}
-	private boolean isOverlapping() {
+	/**
+	 * condition
+	 */
+	public boolean canMoveDown() {
 		Block[] blocks = currentShape.blocks;
 		for(Block block : blocks) {
 			int row = block.getRow(), col = block.getCol();
-			if(row >= 0 && col >= 0 && board[row][col] != null) {
-				return true;
-			}
-		}
-		return false;
-	}
-	private boolean isFullLine(int row) {
-		for(int col = 0; col < WIDTH; col++) {
-			if(board[row][col] == null) {
+			if(row == board.getHeight()-1 || board.isOccupied(row+1, col)) {
 				return false;
 			}
 		}
@@ -89,12 +135,21 @@ public class GameModel {
 		for(Block block : blocks) {
 			int row = block.getRow();
 			int col = block.getCol();
-			if(row >= 0 && col >= 0 && board[row][col] != null) {
+			if(col >= 0 && board.isOccupied(row, col)) {
 				return true;
 			}
 		}
 		return false;
 	}
+	/**
+	 * how many rows the current shape can fall, i.e. where its ghost is
+	 */
+	public int getDropDistance() {
+		return dropDistance(currentShape);
+	}
+	public int dropDistance(GameShape shape) {
+		return board.dropDistance(shape.shapeType, shape.orientation, shape.row, shape.col);
+	}
 	private boolean checkCurrentShapeBounds() {
 		Block[] blocks = currentShape.blocks;
 		for(Block block : blocks) {
@@ -109,8 +164,24 @@ public class GameModel {
 	 * action
 	 */
 	public void moveDown() {
+		down();
+		fireAction(Action.DOWN);
+	}
+	/**
+	 * move down by hand, which guideline scoring awards a point per row
+	 */
+	public void softDrop() {
+		if(canMoveDown()) {
+			scoring.softDrop(1);
+		}
+		down();
+		fireAction(Action.SOFT_DROP);
+	}
+	private void down() {
+		long start = Metrics.now();
 		if(canMoveDown()) {
 			currentShape.moveDown();
+			rotated = false;
 		} else {
 			/**
 			 * here, if current shape cannot move down, and it is out of bounds(do not consider erasing),
@@ -121,23 +192,24 @@ public class GameModel {
 			} else {
 				pack();
 				eraseLine();
-				if(!checkNextShapeBounds()) {
-					currentShape = nextShape;
-					nextShape = GameShape.randomOne();
+				if(raiseGarbage() && !checkNextShapeBounds()) {
+					nextTurn();
 				} else {
 					gameState = GameState.OVER;
 				}
 			}
 		}
+		if(Metrics.ENABLED) {
+			Metrics.MOVE_DOWN.recordSince(start);
+		}
 	}
 	public void moveDownToBottom() {
-		boolean flag = true;
-		while(flag) {
-			if(canMoveDown()) {
-				currentShape.moveDown();
-			} else {
-				flag = false;
-			}
+		long start = Metrics.now();
+		int distance = getDropDistance();
+		if(distance > 0) {
+			currentShape.moveDown(distance);
+			rotated = false;
+			scoring.hardDrop(distance);
 		}
 		/**
 		 * same above
@@ -147,40 +219,116 @@ public class GameModel {
 		} else {
 			pack();
 			eraseLine();
-			if(!checkNextShapeBounds()) {
-				currentShape = nextShape;
-				nextShape = GameShape.randomOne();
+			if(raiseGarbage() && !checkNextShapeBounds()) {
+				nextTurn();
 			} else {
 				gameState = GameState.OVER;
-			}	
+			}
+		}
+		if(Metrics.ENABLED) {
+			Metrics.DROP.recordSince(start);
 		}
+		fireAction(Action.DROP);
 	}
 	public void moveLeft() {
-		currentShape.moveLeft();
-		if(isOutOfBounds() || isOverlapping()) {
-			currentShape.moveRight();
+		if(board.fits(currentShape.shapeType, currentShape.orientation, currentShape.row, currentShape.col-1)) {
+			currentShape.moveLeft();
+			rotated = false;
 		}
+		fireAction(Action.LEFT);
 	}
 	public void moveRight() {
-		currentShape.moveRight();
-		if(isOutOfBounds() || isOverlapping()) {
-			currentShape.moveLeft();
+		if(board.fits(currentShape.shapeType, currentShape.orientation, currentShape.row, currentShape.col+1)) {
+			currentShape.moveRight();
+			rotated = false;
 		}
+		fireAction(Action.RIGHT);
 	}
 	public void rotate() {
-		currentShape.rotate();;
-		if(isOutOfBounds() || isOverlapping()) {
-			// if cannot rotate, rotate back
-			for(int i = 0; i < 3; i++) {
-				currentShape.rotate();
-			}			
+		// test the rotated orientation first, so a blocked rotation changes nothing
+		int orientation = (currentShape.orientation + 1) & 3;
+		if(board.fits(currentShape.shapeType, orientation, currentShape.row, currentShape.col)) {
+			currentShape.setOrientation(orientation);
+			rotated = true;
+		}
+		fireAction(Action.ROTATE);
+	}
+	/**
+	 * put current shape aside and go on with the one held before, or with next shape if none;
+	 * allowed once per shape and only if rules have hold
+	 */
+	public void hold() {
+		if(ruleSet.hasHold() && !holdUsed) {
+			ShapeType held = holdType;
+			holdType = currentShape.shapeType;
+			if(held == null) {
+				GameShape heldShape = currentShape;
+				currentShape = nextShape;
+				nextShape = heldShape;
+				queue.poll();
+				nextShape.respawn(queue.peek(0), 0);
+			} else {
+				currentShape.respawn(held, 0);
+			}
+			holdUsed = true;
+			rotated = false;
+			if(!board.fits(currentShape.shapeType, currentShape.orientation, currentShape.row, currentShape.col)) {
+				gameState = GameState.OVER;
+			}
 		}
+		fireAction(Action.HOLD);
 	}
 	public void reset() {
-		board = new Block[HEIGHT][WIDTH];
-		currentShape = GameShape.randomOne();
-		nextShape = GameShape.randomOne();
-		totalScores = 0;
+		board.clear();
+		currentShape.respawn(queue.poll(), 0);
+		nextShape.respawn(queue.peek(0), 0);
+		holdType = null;
+		holdUsed = false;
+		scoring.reset();
+		totalPieces = 0;
+		rotated = false;
+		combo = 0;
+		lastClear = ClearResult.NONE;
+		pendingGarbage = 0;
+		fireAction(Action.RESET);
+	}
+	/**
+	 * receive garbage lines from an opponent, they are pushed in under the stack after the next lock that erases no line
+	 */
+	public void addGarbage(int lines) {
+		pendingGarbage += lines;
+	}
+	/**
+	 * take back up to the given number of garbage lines not pushed in yet, e.g. when this game attacks; returns how many
+	 */
+	public int cancelGarbage(int lines) {
+		int cancelled = Math.min(lines, pendingGarbage);
+		pendingGarbage -= cancelled;
+		return cancelled;
+	}
+	// every waiting line goes in at once with a hole drawn from root stream, false if the stack was pushed off the top
+	private boolean raiseGarbage() {
+		if(pendingGarbage == 0 || lastClear.getLines() > 0) {
+			return true;
+		}
+		int lines = pendingGarbage;
+		pendingGarbage = 0;
+		return board.addGarbage(lines, random.nextInt(board.getWidth()));
+	}
+	private void fireAction(Action action) {
+		if(observer != null) {
+			observer.action(this, action);
+		}
+	}
+	// next shape becomes current one, the old current shape is respawned as next one
+	private void nextTurn() {
+		GameShape packedShape = currentShape;
+		currentShape = nextShape;
+		nextShape = packedShape;
+		queue.poll();
+		nextShape.respawn(queue.peek(0), 0);
+		rotated = false;
+		holdUsed = false;
 	}
 	public void pack() {
 		Block[] blocks = currentShape.blocks;
@@ -188,33 +336,97 @@ public class GameModel {
 			int row = block.getRow();
 			int col = block.getCol();
 			if(row >= 0 && col >= 0) {
-				board[row][col] = new Block(block);
+				board.fill(row, col, currentShape.shapeType);
 			}
 		}
+		++totalPieces;
+		if(Metrics.ENABLED) {
+			Metrics.PIECES.increment();
+		}
+		if(observer != null) {
+			observer.packed(this, currentShape);
+		}
 	}
-	public void eraseLine() {
-		int lines = 0;
-		Arrays.sort(currentShape.blocks, new Comparator<Block>() {
-			@Override
-			public int compare(Block b1, Block b2) {
-				return b1.getRow() - b2.getRow();
-			}
-		});
-		// now the first block in blocks is the top one
-		Block topBlock = currentShape.blocks[0];
-		for(int row = topBlock.getRow(); row < HEIGHT; row++) {
-			if(row >= 0 && isFullLine(row)) {
-				++lines;
-				for(int i = row; i > 0; i--) {
-					System.arraycopy(board[i-1], 0, board[i], 0, 10);
-				}
-				// new line for first line
-				for(int col = 0; col < WIDTH; col++) {
-					board[0][col] = null;
+	/**
+	 * erase full lines among the rows the current shape covers, in one pass over the board
+	 */
+	public ClearResult eraseLine() {
+		long start = Metrics.now();
+		Block[] blocks = currentShape.blocks;
+		int topRow = blocks[0].getRow(), bottomRow = topRow;
+		for(int i = 1; i < blocks.length; i++) {
+			topRow = Math.min(topRow, blocks[i].getRow());
+			bottomRow = Math.max(bottomRow, blocks[i].getRow());
+		}
+		TSpin tSpin = tSpin();
+		int lines = bottomRow < 0 ? 0 : board.clearFullLines(topRow, bottomRow);
+		if(lines > 0) {
+			lastClear = new ClearResult(lines, tSpin, combo++);
+		} else {
+			combo = 0;
+			lastClear = tSpin == TSpin.NONE ? ClearResult.NONE : new ClearResult(0, tSpin, 0);
+		}
+		scoring.lock(lastClear);
+		if(Metrics.ENABLED) {
+			Metrics.LINES.add(lines);
+			Metrics.ERASE_LINE.recordSince(start);
+		}
+		return lastClear;
+	}
+	// 3-corner test around the pivot of a T shape that has just been rotated into place
+	private TSpin tSpin() {
+		if(!rotated || currentShape.shapeType != ShapeType.T) {
+			return TSpin.NONE;
+		}
+		ShapeType shapeType = currentShape.shapeType;
+		int orientation = currentShape.orientation;
+		// offsets of the other blocks from pivot sum up to the direction the T points to
+		int frontRow = 0, frontCol = 0;
+		for(int i = 0; i < 4; i++) {
+			frontRow += shapeType.rowOffset(orientation, i);
+			frontCol += shapeType.colOffset(orientation, i);
+		}
+		int corners = 0, fronts = 0;
+		for(int dr = -1; dr <= 1; dr += 2) {
+			for(int dc = -1; dc <= 1; dc += 2) {
+				if(isBlocked(currentShape.row + dr, currentShape.col + dc)) {
+					++corners;
+					if(dr == frontRow || dc == frontCol) {
+						++fronts;
+					}
 				}
 			}
 		}
-		totalScores += lines * 20;
+		if(corners < 3) {
+			return TSpin.NONE;
+		}
+		return fronts == 2 ? TSpin.FULL : TSpin.MINI;
+	}
+	private boolean isBlocked(int row, int col) {
+		return col < 0 || col >= board.getWidth() || row >= board.getHeight() || board.isOccupied(row, col);
+	}
+	/**********************************************************/
+	public enum Action {
+		LEFT,
+		RIGHT,
+		ROTATE,
+		DOWN,
+		DROP,
+		RESET,
+		HOLD,
+		SOFT_DROP
+	}
+	/**********************************************************/
+	public interface Observer {
+		/**
+		 * called after the model has performed an action
+		 */
+		void action(GameModel gameModel, Action action);
+		/**
+		 * called when a shape has been packed into board, before lines are erased
+		 */
+		default void packed(GameModel gameModel, GameShape shape) {
+		}
 	}
 	/**********************************************************/
 	public enum GameState {
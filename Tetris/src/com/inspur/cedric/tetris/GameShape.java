@@ -1,124 +1,96 @@
 package com.inspur.cedric.tetris;
 
-import java.awt.image.BufferedImage;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
-import java.util.Random;
 
-public abstract class GameShape {
-	// indicates pivot of shape
-	protected Block pivot;
+/**
+ * a falling shape: the mutable position of an immutable per-type rotation table,
+ * instances are respawned in place so that spawning allocates nothing
+ */
+public class GameShape {
+	// indicates position of pivot of shape
+	protected int row;
+	protected int col;
+	// indicates orientation of shape, 0 is the spawn orientation, each rotation adds 1 (mod 4)
+	protected int orientation;
 	// indicates blocks that a shape contains
 	protected Block[] blocks;
 	// indicates shape type
 	protected ShapeType shapeType;
-	// random
-	protected static Random random;
-	static {
-		random = new Random(42);
-	}
+	// indicates columns this shape spawns right of the spawn position of its type, for wider boards
+	protected final int spawnShift;
 	// constructor
-	protected GameShape() {
+	public GameShape(ShapeType shapeType) {
+		this(shapeType, 0);
+	}
+	public GameShape(ShapeType shapeType, int spawnShift) {
+		this.spawnShift = spawnShift;
 		blocks = new Block[4];
+		for(int i = 0; i < blocks.length; i++) {
+			blocks[i] = new Block(0, 0);
+		}
+		respawn(shapeType, 0);
 	}
+	/**
+	 * GETTER: row, col, orientation, blocks, shapeType
+	 */
+	public int getRow() { return row; }
+	public int getCol() { return col; }
+	public int getOrientation() { return orientation; }
+	public Block[] getBlocks() { return blocks; }
+	public ShapeType getShapeType() { return shapeType; }
 	/**
 	 * action interface of GameShape
 	 */
 	public void moveDown() {
+		++row;
 		for(Block block : blocks) {
 			block.moveDown();
 		}
 	}
+	public void moveDown(int rows) {
+		row += rows;
+		for(Block block : blocks) {
+			block.setRow(block.getRow() + rows);
+		}
+	}
 	public void moveLeft() {
+		--col;
 		for(Block block : blocks) {
 			block.moveLeft();
 		}
 	}
 	public void moveRight() {
+		++col;
 		for(Block block : blocks) {
 			block.moveRight();
 		}
 	}
-	// CORE method of program
-	// x' = (x-x_p)cos(a) - (y-y_p)*sin(a) + x_p
-	// y' = (x-x_p)sin(a) + (y-y_p)*cos(a) + y_p
 	public void rotate() {
-		if(shapeType != ShapeType.O) {
-			for(Block block : blocks) {
-				if(block != pivot) {
-					int row = -(block.getCol()-pivot.getCol())+pivot.getRow();
-					int col = block.getRow()-pivot.getRow()+pivot.getCol();
-					block.setRow(row);
-					block.setCol(col);
-				}
-			}
-		}
+		setOrientation((orientation + 1) & 3);
 	}
-	/**
-	 * get instance of shape
-	 */
-	public static GameShape createInstance(Class<? extends GameShape> clazz) {
-		GameShape gameShape = null;
-		try {
-			Constructor<? extends GameShape> constructor = clazz.getDeclaredConstructor();
-			constructor.setAccessible(true);
-			gameShape = constructor.newInstance();
-		} catch(InvocationTargetException | NoSuchMethodException | IllegalAccessException | InstantiationException e) {
-			throw new RuntimeException("cannot create blocks");
+	// looks up the blocks of the orientation in rotation table, nothing is recomputed
+	public void setOrientation(int orientation) {
+		this.orientation = orientation;
+		for(int i = 0; i < blocks.length; i++) {
+			blocks[i].setRow(row + shapeType.rowOffset(orientation, i));
+			blocks[i].setCol(col + shapeType.colOffset(orientation, i));
 		}
-		return gameShape;
 	}
 	/**
-	 * choose a shape randomly
+	 * turn this shape into a new one of the type at spawn position, reusing its blocks
 	 */
-	public static GameShape randomOne() {
-		ShapeType shapeType = ShapeType.randomShape();
-		GameShape gameShape = null;
-		switch (shapeType) {
-		case O:
-			gameShape = createInstance(ShapeO.class);
-			break;
-		case I:
-			gameShape = createInstance(ShapeI.class);
-			for(int i = 0; i < random.nextInt(2); i++) {
-				gameShape.rotate();
-			}
-			break;
-		case T:
-			gameShape = createInstance(ShapeT.class);
-			for(int i = 0; i < random.nextInt(4); i++) {
-				gameShape.rotate();
-			}
-			break;
-		case J:
-			gameShape = createInstance(ShapeJ.class);
-			for(int i = 0; i < random.nextInt(4); i++) {
-				gameShape.rotate();
-			}
-			break;
-		case L:
-			gameShape = createInstance(ShapeL.class);
-			for(int i = 0; i < random.nextInt(4); i++) {
-				gameShape.rotate();
-			}
-			break;
-		case Z:
-			gameShape = createInstance(ShapeZ.class);
-			for(int i = 0; i < random.nextInt(4); i++) {
-				gameShape.rotate();
-			}
-			break;
-		case S:
-			gameShape = createInstance(ShapeS.class);
-			for(int i = 0; i < random.nextInt(4); i++) {
-				gameShape.rotate();
-			}
-			break;
-		default:
-			break;
-		}
-		return gameShape;
+	public void respawn(ShapeType shapeType, int orientation) {
+		this.shapeType = shapeType;
+		row = shapeType.spawnRow;
+		col = shapeType.spawnCol + spawnShift;
+		setOrientation(orientation);
+	}
+	// put this shape back where a snapshot saw it
+	void restore(ShapeType shapeType, int orientation, int row, int col) {
+		this.shapeType = shapeType;
+		this.row = row;
+		this.col = col;
+		setOrientation(orientation);
 	}
 	/**
 	 * toString override
@@ -132,30 +104,24 @@ public abstract class GameShape {
 		private int row;
 		// indicates which column the block is
 		private int col;
-		// what block looks like
-		private BufferedImage blockImage;
 		/**
 		 * constructor
 		 */
-		public Block(int row, int col, BufferedImage blockImage) {
+		public Block(int row, int col) {
 			this.row = row;
 			this.col = col;
-			this.blockImage = blockImage;
 		}
 		public Block(Block block) {
 			this.row = block.row;
 			this.col = block.col;
-			this.blockImage = block.blockImage;
 		}
 		/**
-		 * GETTER & SETTER: row, column, blockImage
+		 * GETTER & SETTER: row, column
 		 */
 		public int getRow() { return row; }
 		public void setRow(int row) { this.row = row; }
 		public int getCol() { return col; }
 		public void setCol(int col) { this.col = col; }
-		public BufferedImage getBlockImage() { return blockImage; }
-		public void setBlockImage(BufferedImage blockImage) { this.blockImage = blockImage; }
 		/**
 		 * action of block
 		 */
@@ -173,115 +139,54 @@ public abstract class GameShape {
 		}
 	}
 	/**********************************************************/
-	private static class ShapeO extends GameShape {
-		/**
-		 * constructor
-		 */
-		private ShapeO() {
-			super();
-			blocks[0] = new Block(-1, 4, GameView.Image.O);
-			blocks[1] = new Block(-1, 5, GameView.Image.O);
-			blocks[2] = new Block(0, 4, GameView.Image.O);
-			blocks[3] = new Block(0, 5, GameView.Image.O);
-			pivot = null;
-			shapeType = ShapeType.O;
-		}
-	}
-	/**********************************************************/
-	private static class ShapeI extends GameShape {
-		/**
-		 * constructor
-		 */
-		private ShapeI() {
-			super();
-			blocks[0] = new Block(-1, 3, GameView.Image.I);
-			blocks[1] = new Block(-1, 4, GameView.Image.I);
-			blocks[2] = new Block(-1, 5, GameView.Image.I);
-			blocks[3] = new Block(-1, 6, GameView.Image.I);
-			pivot = blocks[1];
-			shapeType = ShapeType.I;
-		}
-	}
-	/**********************************************************/
-	private static class ShapeT extends GameShape {
-		/**
-		 * constructor
-		 */
-		private ShapeT() {
-			super();
-			blocks[0] = new Block(-1, 3, GameView.Image.T);
-			blocks[1] = new Block(-1, 4, GameView.Image.T);
-			blocks[2] = new Block(-1, 5, GameView.Image.T);
-			blocks[3] = new Block(0, 4, GameView.Image.T);
-			pivot = blocks[1];
-			shapeType = ShapeType.T;
-		}
-	}
-	/**********************************************************/
-	private static class ShapeJ extends GameShape {
-		/**
-		 * constructor
-		 */
-		private ShapeJ() {
-			super();
-			blocks[0] = new Block(-1, 3, GameView.Image.J);
-			blocks[1] = new Block(-1, 4, GameView.Image.J);
-			blocks[2] = new Block(-1, 5, GameView.Image.J);
-			blocks[3] = new Block(0, 5, GameView.Image.J);
-			pivot = blocks[1];
-			shapeType = ShapeType.J;
-		}
-	}
-	/**********************************************************/
-	private static class ShapeL extends GameShape {
-		/**
-		 * constructor
-		 */
-		private ShapeL() {
-			super();
-			blocks[0] = new Block(-1, 3, GameView.Image.L);
-			blocks[1] = new Block(-1, 4, GameView.Image.L);
-			blocks[2] = new Block(-1, 5, GameView.Image.L);
-			blocks[3] = new Block(0, 3, GameView.Image.L);
-			pivot = blocks[1];
-			shapeType = ShapeType.L;
-		}
-	}
-	/**********************************************************/
-	private static class ShapeZ extends GameShape {
+	public static enum ShapeType {
+		// spawn position of each block, index of pivot block (-1 if shape never rotates)
+		O(new int[][] {{-1, 4}, {-1, 5}, {0, 4}, {0, 5}}, -1),
+		I(new int[][] {{-1, 3}, {-1, 4}, {-1, 5}, {-1, 6}}, 1),
+		T(new int[][] {{-1, 3}, {-1, 4}, {-1, 5}, {0, 4}}, 1),
+		J(new int[][] {{-1, 3}, {-1, 4}, {-1, 5}, {0, 5}}, 1),
+		L(new int[][] {{-1, 3}, {-1, 4}, {-1, 5}, {0, 3}}, 1),
+		Z(new int[][] {{-1, 3}, {-1, 4}, {0, 4}, {0, 5}}, 1),
+		S(new int[][] {{-1, 5}, {-1, 4}, {0, 4}, {0, 3}}, 1);
+		// indicates spawn position of pivot
+		private final int spawnRow;
+		private final int spawnCol;
+		// rotation table: offsets of each block from pivot, [orientation][block]
+		private final int[][] rowOffsets;
+		private final int[][] colOffsets;
 		/**
-		 * constructor
+		 * constructor, precomputes all 4 orientations by rotating around pivot once per orientation
 		 */
-		private ShapeZ() {
-			super();
-			blocks[0] = new Block(-1, 3, GameView.Image.Z);
-			blocks[1] = new Block(-1, 4, GameView.Image.Z);
-			blocks[2] = new Block(0, 4, GameView.Image.Z);
-			blocks[3] = new Block(0, 5, GameView.Image.Z);
-			pivot = blocks[1];
-			shapeType = ShapeType.Z;
+		private ShapeType(int[][] spawn, int pivot) {
+			int[] origin = spawn[Math.max(pivot, 0)];
+			spawnRow = origin[0];
+			spawnCol = origin[1];
+			rowOffsets = new int[4][spawn.length];
+			colOffsets = new int[4][spawn.length];
+			for(int i = 0; i < spawn.length; i++) {
+				rowOffsets[0][i] = spawn[i][0] - spawnRow;
+				colOffsets[0][i] = spawn[i][1] - spawnCol;
+			}
+			// x' = (x-x_p)cos(a) - (y-y_p)*sin(a) + x_p
+			// y' = (x-x_p)sin(a) + (y-y_p)*cos(a) + y_p
+			for(int orientation = 1; orientation < 4; orientation++) {
+				for(int i = 0; i < spawn.length; i++) {
+					if(pivot < 0) {
+						rowOffsets[orientation][i] = rowOffsets[0][i];
+						colOffsets[orientation][i] = colOffsets[0][i];
+					} else {
+						rowOffsets[orientation][i] = -colOffsets[orientation-1][i];
+						colOffsets[orientation][i] = rowOffsets[orientation-1][i];
+					}
+				}
+			}
 		}
-	}
-	/**********************************************************/
-	private static class ShapeS extends GameShape {
 		/**
-		 * constructor
+		 * GETTER: spawn position of pivot, offsets of a block from pivot in the orientation
 		 */
-		private ShapeS() {
-			super();
-			blocks[0] = new Block(-1, 5, GameView.Image.S);
-			blocks[1] = new Block(-1, 4, GameView.Image.S);
-			blocks[2] = new Block(0, 4, GameView.Image.S);
-			blocks[3] = new Block(0, 3, GameView.Image.S);
-			pivot = blocks[1];
-			shapeType = ShapeType.S;
-		}
-	}
-	/**********************************************************/
-	public static enum ShapeType {
-		O, I, T, J, L, Z, S;
-		public static ShapeType randomShape() {
-			return values()[random.nextInt(7)];
-		}
+		public int getSpawnRow() { return spawnRow; }
+		public int getSpawnCol() { return spawnCol; }
+		public int rowOffset(int orientation, int block) { return rowOffsets[orientation][block]; }
+		public int colOffset(int orientation, int block) { return colOffsets[orientation][block]; }
 	}
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.inspur.cedric.tetris;
+
+import com.inspur.cedric.tetris.GameModel.GameState;
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+import com.inspur.cedric.tetris.random.PieceGenerator;
+
+/**
+ * immutable picture of a game at one moment, safe to read from any thread;
+ * the board shares its rows with the model, so taking one copies no cells,
+ * and GameModel.restore can bring the game back to it
+ */
+public class GameSnapshot {
+	// indicates copy of board, never modified after construction
+	final BitBoard board;
+	// indicates type, orientation and pivot position of current shape
+	final ShapeType currentType;
+	final int currentOrientation;
+	final int currentRow;
+	final int currentCol;
+	// indicates how many rows current shape can fall
+	private final int dropDistance;
+	// indicates coming shapes, the first is next shape, and how many shapes had been taken from queue
+	final ShapeType[] previews;
+	final long dealt;
+	// indicates shape put aside by hold, null if none, and whether hold has been used since last lock
+	final ShapeType holdType;
+	final boolean holdUsed;
+	final int totalScores;
+	final int totalLines;
+	final int totalPieces;
+	private final int level;
+	final GameState gameState;
+	// indicates what T-spin and combo detection need to go on
+	final boolean rotated;
+	final int combo;
+	final ClearResult lastClear;
+	// indicates whether the next difficult clear scores back-to-back, and points of the last lock
+	final boolean backToBack;
+	final int lastPoints;
+	final int pendingGarbage;
+	// indicates state of random stream and source of shapes, so a restored game draws the same shapes
+	final long randomState;
+	final PieceGenerator generator;
+	/**
+	 * constructor
+	 */
+	GameSnapshot(GameModel gameModel, boolean rotated, int combo) {
+		board = gameModel.board.snapshot();
+		GameShape currentShape = gameModel.getCurrentShape();
+		currentType = currentShape.shapeType;
+		currentOrientation = currentShape.orientation;
+		currentRow = currentShape.row;
+		currentCol = currentShape.col;
+		dropDistance = gameModel.getDropDistance();
+		previews = new ShapeType[gameModel.queue.getDepth()];
+		gameModel.queue.copyTo(previews);
+		dealt = gameModel.queue.getDealt();
+		holdType = gameModel.getHoldType();
+		holdUsed = gameModel.isHoldUsed();
+		totalScores = gameModel.getTotalScores();
+		totalLines = gameModel.getTotalLines();
+		totalPieces = gameModel.getTotalPieces();
+		level = gameModel.getLevel();
+		gameState = gameModel.getGameState();
+		this.rotated = rotated;
+		this.combo = combo;
+		lastClear = gameModel.getLastClear();
+		backToBack = gameModel.getScoring().isBackToBack();
+		lastPoints = gameModel.getScoring().getLastPoints();
+		pendingGarbage = gameModel.getPendingGarbage();
+		randomState = gameModel.random.getState();
+		generator = gameModel.queue.getGenerator().copy();
+	}
+	/**
+	 * GETTER: board, currentShape, previews, holdType, totalScores, totalLines, totalPieces, level, gameState, pendingGarbage
+	 */
+	public int getWidth() { return board.getWidth(); }
+	public int getHeight() { return board.getHeight(); }
+	public ShapeType getType(int row, int col) { return board.getType(row, col); }
+	public boolean isGarbage(int row, int col) { return board.isGarbage(row, col); }
+	public long getRowMask(int row) { return board.getRowMask(row); }
+	public long getBoardVersion() { return board.getVersion(); }
+	// whether the row of the board is the same in another snapshot of the game, cheap for rows not written in between
+	public boolean rowEquals(GameSnapshot snapshot, int row) { return board.rowEquals(snapshot.board, row); }
+	public ShapeType getCurrentType() { return currentType; }
+	public int getCurrentOrientation() { return currentOrientation; }
+	public int getCurrentRow() { return currentRow; }
+	public int getCurrentCol() { return currentCol; }
+	public int getDropDistance() { return dropDistance; }
+	public int getPreviewCount() { return previews.length; }
+	public ShapeType getPreview(int position) { return previews[position]; }
+	public long getDealt() { return dealt; }
+	public ShapeType getHoldType() { return holdType; }
+	public boolean isHoldUsed() { return holdUsed; }
+	public int getTotalScores() { return totalScores; }
+	public int getTotalLines() { return totalLines; }
+	public int getTotalPieces() { return totalPieces; }
+	public int getLevel() { return level; }
+	public GameState getGameState() { return gameState; }
+	public int getPendingGarbage() { return pendingGarbage; }
+}
@@ -1,15 +1,23 @@
 package com.inspur.cedric.tetris;
 
+import java.awt.AlphaComposite;
+import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 
 import javax.imageio.ImageIO;
 import javax.swing.JPanel;
 
-import com.inspur.cedric.tetris.GameShape.Block;
+import com.inspur.cedric.tetris.GameModel.GameState;
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+import com.inspur.cedric.tetris.metrics.Metrics;
 
 public class GameView extends JPanel {
 	/**
@@ -20,86 +28,285 @@ public class GameView extends JPanel {
 	private static final int BLOCK_SIZE = 26;
 	private static final String[] FLAGS = { "[P]ause", "[C]ontinue]", "[S]tart"};
 	private static final String GAMEOVER = "game over";
-	// indicates which model this view been instructed
-	private GameModel gameModel;
+	private static final AlphaComposite GHOST = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.3f);
+	private static final Font FONT = new Font(Font.MONOSPACED, Font.BOLD, 26);
+	private static final Font SMALL_FONT = new Font(Font.MONOSPACED, Font.BOLD, 16);
+	// indicates where the board starts on the panel
+	private static final int BOARD_X = 15;
+	private static final int BOARD_Y = 15;
+	// indicates where the side panel starts on background image, left of it is the frame of a 10x20 board
+	private static final int PANEL_X = 285;
+	// indicates a plain strip of side panel between its boxes and the logo, tiled below a panel that is too short
+	private static final int STRIP_Y = 310;
+	private static final int STRIP_HEIGHT = 15;
+	// indicates width of the column right of side panel that shows hold and further previews,
+	// and size of a block there
+	private static final int QUEUE_WIDTH = 100;
+	private static final int MINI_SIZE = BLOCK_SIZE / 2;
+	// indicates rules the view lays itself out for
+	private final RuleSet ruleSet;
+	// indicates where the side panel and the queue column start, relative to the board
+	private final int sideX;
+	private final int queueX;
+	// indicates whether queue column is shown, i.e. there is hold or more than one preview
+	private final boolean queueShown;
+	// indicates size of the whole view
+	private final int layerWidth;
+	private final int layerHeight;
+	// indicates latest state published to this view
+	private volatile GameSnapshot snapshot;
+	// indicates when a snapshot not painted yet was published, 0 if none, kept only when metrics are enabled
+	private volatile long publishNanos;
+	// indicates cached picture of everything except current shape and its ghost, touched by EDT only
+	private BufferedImage layer;
+	// indicates which snapshot the layer was drawn from
+	private GameSnapshot layerSnapshot;
 	/**
 	 * constructor
 	 */
-	public GameView(GameModel gameModel) {
-		this.gameModel = gameModel;
+	public GameView(RuleSet ruleSet, GameSnapshot snapshot) {
+		this.ruleSet = ruleSet;
+		this.snapshot = snapshot;
+		sideX = ruleSet.getWidth() * BLOCK_SIZE + 10;
+		queueX = sideX + Image.background.getWidth() - PANEL_X;
+		queueShown = ruleSet.hasHold() || ruleSet.getPreviews() > 1;
+		layerWidth = BOARD_X + queueX + (queueShown ? QUEUE_WIDTH : 0);
+		layerHeight = Math.max(Image.background.getHeight(), BOARD_Y * 2 + ruleSet.getHeight() * BLOCK_SIZE);
+	}
+	/**
+	 * size of background and board, the frame is packed around it
+	 */
+	@Override
+	public Dimension getPreferredSize() {
+		return new Dimension(layerWidth, layerHeight);
+	}
+	/**
+	 * show a newer state; snapshots must be published from one thread, e.g. the game loop.
+	 * if only current shape moved, just the cells it left and entered are repainted
+	 */
+	public void publish(GameSnapshot snapshot) {
+		GameSnapshot previous = this.snapshot;
+		this.snapshot = snapshot;
+		if(Metrics.ENABLED && publishNanos == 0) {
+			publishNanos = System.nanoTime();
+		}
+		if(previous == null || !isSameLayer(previous, snapshot)) {
+			repaint();
+		} else {
+			repaintShape(previous);
+			repaintShape(snapshot);
+		}
 	}
 	/**
 	 * paint override
 	 */
 	@Override
 	public void paint(Graphics graphics) {
-		graphics.drawImage(Image.background, 0, 0, this);
-		graphics.translate(15, 15);
-		paintBoard(graphics);
-		paintCurrentShape(graphics);
-		paintNextShape(graphics);
-		paintState(graphics);
-		paintScore(graphics);
+		long start = Metrics.now();
+		// read once so that every part of the frame shows the same state
+		GameSnapshot snapshot = this.snapshot;
+		if(layer == null || !isSameLayer(layerSnapshot, snapshot)) {
+			paintLayer(snapshot);
+		}
+		// only the clip, i.e. the dirty region, is copied
+		graphics.drawImage(layer, 0, 0, null);
+		graphics.translate(BOARD_X, BOARD_Y);
+		paintGhostShape(graphics, snapshot);
+		paintCurrentShape(graphics, snapshot);
+		if(Metrics.ENABLED) {
+			Metrics.PAINT.recordSince(start);
+			// time the oldest unpainted snapshot waited for EDT
+			long published = publishNanos;
+			if(published != 0) {
+				publishNanos = 0;
+				Metrics.FRAME_LATENCY.record(start - published);
+			}
+		}
+	}
+	/**
+	 * redraw cached layer, which changes only when a shape is packed, lines are
+	 * erased, or score, level, state or next shape change
+	 */
+	private void paintLayer(GameSnapshot snapshot) {
+		if(layer == null) {
+			GraphicsConfiguration configuration = getGraphicsConfiguration();
+			layer = configuration != null ? configuration.createCompatibleImage(layerWidth, layerHeight)
+					: new BufferedImage(layerWidth, layerHeight, BufferedImage.TYPE_INT_RGB);
+		}
+		Graphics graphics = layer.createGraphics();
+		paintBackground(graphics);
+		graphics.translate(BOARD_X, BOARD_Y);
+		paintBoard(graphics, snapshot);
+		if(ruleSet.getPreviews() > 0) {
+			paintNextShape(graphics, snapshot);
+		}
+		if(queueShown) {
+			paintQueue(graphics, snapshot);
+		}
+		paintState(graphics, snapshot);
+		paintScore(graphics, snapshot);
+		graphics.dispose();
+		layerSnapshot = snapshot;
+	}
+	// background is drawn as it is for a 10x20 board, otherwise board frame is stretched and side panel moved;
+	// queue column is tiled from a plain strip of side panel
+	private void paintBackground(Graphics graphics) {
+		BufferedImage background = Image.background;
+		int width = background.getWidth(), height = background.getHeight();
+		int panelX = BOARD_X + sideX, panelRight = BOARD_X + queueX;
+		if(panelX == PANEL_X && layerHeight == height) {
+			graphics.drawImage(background, 0, 0, null);
+		} else {
+			graphics.drawImage(background, 0, 0, panelX, layerHeight, 0, 0, PANEL_X, height, null);
+			graphics.drawImage(background, panelX, 0, panelRight, height, PANEL_X, 0, width, height, null);
+			for(int y = height; y < layerHeight; y += STRIP_HEIGHT) {
+				graphics.drawImage(background, panelX, y, panelRight, y + STRIP_HEIGHT, PANEL_X, STRIP_Y, width, STRIP_Y + STRIP_HEIGHT, null);
+			}
+		}
+		for(int y = 0; queueShown && y < layerHeight; y += STRIP_HEIGHT) {
+			graphics.drawImage(background, panelRight, y, layerWidth, y + STRIP_HEIGHT,
+					PANEL_X + 10, STRIP_Y, PANEL_X + 10 + QUEUE_WIDTH, STRIP_Y + STRIP_HEIGHT, null);
+		}
+	}
+	private static boolean isSameLayer(GameSnapshot a, GameSnapshot b) {
+		return a.getBoardVersion() == b.getBoardVersion() && a.getDealt() == b.getDealt()
+				&& a.getHoldType() == b.getHoldType() && a.getTotalScores() == b.getTotalScores()
+				&& a.getLevel() == b.getLevel() && a.getGameState() == b.getGameState()
+				&& a.getWidth() == b.getWidth() && a.getHeight() == b.getHeight();
+	}
+	// repaint bounding box of current shape and its ghost
+	private void repaintShape(GameSnapshot snapshot) {
+		ShapeType shapeType = snapshot.getCurrentType();
+		int orientation = snapshot.getCurrentOrientation();
+		int minRow = Integer.MAX_VALUE, maxRow = Integer.MIN_VALUE, minCol = Integer.MAX_VALUE, maxCol = Integer.MIN_VALUE;
+		for (int i = 0; i < 4; i++) {
+			int row = snapshot.getCurrentRow() + shapeType.rowOffset(orientation, i);
+			int col = snapshot.getCurrentCol() + shapeType.colOffset(orientation, i);
+			minRow = Math.min(minRow, row);
+			maxRow = Math.max(maxRow, row + snapshot.getDropDistance());
+			minCol = Math.min(minCol, col);
+			maxCol = Math.max(maxCol, col);
+		}
+		minRow = Math.max(minRow, 0);
+		if(maxRow >= minRow) {
+			// one more pixel for the right and bottom edge of the grid drawn by drawRect
+			repaint(BOARD_X + minCol * BLOCK_SIZE, BOARD_Y + minRow * BLOCK_SIZE,
+					(maxCol - minCol + 1) * BLOCK_SIZE + 1, (maxRow - minRow + 1) * BLOCK_SIZE + 1);
+		}
 	}
 	/**
 	 * action of view
 	 */
-	public void paintCurrentShape(Graphics graphics) {
-		Block[] blocks = gameModel.getCurrentShape().blocks;
-		for (Block block : blocks) {
-			
-			int x = block.getCol() * BLOCK_SIZE;
-			int y = block.getRow() * BLOCK_SIZE;
+	public void paintCurrentShape(Graphics graphics, GameSnapshot snapshot) {
+		ShapeType shapeType = snapshot.getCurrentType();
+		int orientation = snapshot.getCurrentOrientation();
+		BufferedImage image = Image.of(shapeType);
+		for (int i = 0; i < 4; i++) {
+			int x = (snapshot.getCurrentCol() + shapeType.colOffset(orientation, i)) * BLOCK_SIZE;
+			int y = (snapshot.getCurrentRow() + shapeType.rowOffset(orientation, i)) * BLOCK_SIZE;
 			//  block that within board range can be displayed
-			if(x >= 0 && x < GameModel.WIDTH * BLOCK_SIZE && y >= 0 && y <= GameModel.HEIGHT * BLOCK_SIZE) {
-				graphics.drawImage(block.getBlockImage(), x, y, null);
+			if(x >= 0 && x < snapshot.getWidth() * BLOCK_SIZE && y >= 0 && y <= snapshot.getHeight() * BLOCK_SIZE) {
+				graphics.drawImage(image, x, y, null);
 			}
 		}
 	}
-	public void paintNextShape(Graphics graphics) {
-		Block[] blocks = gameModel.getNextShape().blocks;
-		for (Block block : blocks) {
-			int x = block.getCol() * BLOCK_SIZE + 270;
-			int y = 0;
-			if(gameModel.getNextShape().shapeType == GameShape.ShapeType.I) {
-				y = block.getRow() * BLOCK_SIZE + 78;	
+	// where current shape would land, drawn translucently
+	public void paintGhostShape(Graphics graphics, GameSnapshot snapshot) {
+		int distance = snapshot.getDropDistance();
+		if(distance == 0) {
+			return;
+		}
+		ShapeType shapeType = snapshot.getCurrentType();
+		int orientation = snapshot.getCurrentOrientation();
+		Graphics2D graphics2d = (Graphics2D) graphics.create();
+		graphics2d.setComposite(GHOST);
+		BufferedImage image = Image.of(shapeType);
+		for (int i = 0; i < 4; i++) {
+			int row = snapshot.getCurrentRow() + shapeType.rowOffset(orientation, i) + distance;
+			if(row >= 0) {
+				int col = snapshot.getCurrentCol() + shapeType.colOffset(orientation, i);
+				graphics2d.drawImage(image, col * BLOCK_SIZE, row * BLOCK_SIZE, null);
+			}
+		}
+		graphics2d.dispose();
+	}
+	public void paintNextShape(Graphics graphics, GameSnapshot snapshot) {
+		ShapeType shapeType = snapshot.getPreview(0);
+		BufferedImage image = Image.of(shapeType);
+		for (int i = 0; i < 4; i++) {
+			int x = (shapeType.getSpawnCol() + shapeType.colOffset(0, i)) * BLOCK_SIZE + sideX;
+			int y = (shapeType.getSpawnRow() + shapeType.rowOffset(0, i)) * BLOCK_SIZE;
+			if(shapeType == ShapeType.I) {
+				y += 78;
 			} else {
-				y = block.getRow() * BLOCK_SIZE + 60;
+				y += 60;
 			}
-			graphics.drawImage(block.getBlockImage(), x, y, null);
+			graphics.drawImage(image, x, y, null);
 		}
 	}
-	public void paintBoard(Graphics a) {
-		Block[][] board = gameModel.getBoard();
-		for (int i = 0; i < GameModel.HEIGHT; i++) {
-			for (int j = 0; j < GameModel.WIDTH; j++) {
+	// hold on top of queue column, then previews after the first one, at half size
+	private void paintQueue(Graphics graphics, GameSnapshot snapshot) {
+		graphics.setFont(SMALL_FONT);
+		int y = 15;
+		if(ruleSet.hasHold()) {
+			graphics.drawString("HOLD", queueX + 10, y);
+			if(snapshot.getHoldType() != null) {
+				paintMiniShape(graphics, snapshot.getHoldType(), queueX + 10, y + 10);
+			}
+			y += 70;
+		}
+		if(ruleSet.getPreviews() > 1) {
+			graphics.drawString("NEXT", queueX + 10, y);
+			for(int i = 1; i < snapshot.getPreviewCount(); i++) {
+				paintMiniShape(graphics, snapshot.getPreview(i), queueX + 10, y + 10 + (i - 1) * 3 * MINI_SIZE);
+			}
+		}
+	}
+	private void paintMiniShape(Graphics graphics, ShapeType shapeType, int x, int y) {
+		BufferedImage image = Image.of(shapeType);
+		for (int i = 0; i < 4; i++) {
+			// spawn columns are 3 to 6 and spawn rows -1 to 0
+			int col = shapeType.getSpawnCol() + shapeType.colOffset(0, i) - 3;
+			int row = shapeType.getSpawnRow() + shapeType.rowOffset(0, i) + 1;
+			graphics.drawImage(image, x + col * MINI_SIZE, y + row * MINI_SIZE, MINI_SIZE, MINI_SIZE, null);
+		}
+	}
+	public void paintBoard(Graphics a, GameSnapshot snapshot) {
+		for (int i = 0; i < snapshot.getHeight(); i++) {
+			for (int j = 0; j < snapshot.getWidth(); j++) {
 				int x = j * BLOCK_SIZE;
 				int y = i * BLOCK_SIZE;
-				Block block = board[i][j];
-				if (block == null) {
-					a.drawRect(x, y, BLOCK_SIZE, BLOCK_SIZE);
+				ShapeType type = snapshot.getType(i, j);
+				if (type != null) {
+					a.drawImage(Image.of(type), x, y, null);
+				} else if (snapshot.isGarbage(i, j)) {
+					a.drawImage(Image.GARBAGE, x, y, null);
 				} else {
-					a.drawImage(block.getBlockImage(), x, y, null);
+					a.drawRect(x, y, BLOCK_SIZE, BLOCK_SIZE);
 				}
 			}
 		}
 	}
-	public void paintScore(Graphics graphics) {
-		graphics.setFont(new Font(Font.MONOSPACED, Font.BOLD, 26));
-		graphics.drawString("SCORES: " + gameModel.getTotalScores(), 285, 160);
+	public void paintScore(Graphics graphics, GameSnapshot snapshot) {
+		graphics.setFont(FONT);
+		graphics.drawString("SCORES: " + snapshot.getTotalScores(), sideX + 15, 160);
+		// the middle box shows game over instead of level
+		if(snapshot.getGameState() != GameState.OVER) {
+			graphics.drawString("LEVEL: " + snapshot.getLevel(), sideX + 15, 215);
+		}
 	}
-	private void paintState(Graphics graphics) {
-		graphics.setFont(new Font(Font.MONOSPACED, Font.BOLD, 26));
-		switch (gameModel.getGameState()) {
+	private void paintState(Graphics graphics, GameSnapshot snapshot) {
+		graphics.setFont(FONT);
+		switch (snapshot.getGameState()) {
 		case RUNNING:
-			graphics.drawString(FLAGS[0], 285, 270);
+			graphics.drawString(FLAGS[0], sideX + 15, 270);
 			break;
 		case PAUSING:
-			graphics.drawString(FLAGS[1], 285, 270);
+			graphics.drawString(FLAGS[1], sideX + 15, 270);
 			break;
 		case OVER:
-			graphics.drawString(GAMEOVER, 285, 215);
-			graphics.drawString(FLAGS[2], 285, 270);
+			graphics.drawString(GAMEOVER, sideX + 15, 215);
+			graphics.drawString(FLAGS[2], sideX + 15, 270);
 			break;
 		default:
 			break;
@@ -107,6 +314,8 @@ public class GameView extends JPanel {
 	}
 	/**********************************************************/
 	public static class Image {
+		// indicates size of a block sprite in atlas, sprites are laid out in order of ShapeType
+		private static final int SPRITE_SIZE = 29;
 		// image of background
 		public static BufferedImage background; 
 		// image of game-over
@@ -119,23 +328,76 @@ public class GameView extends JPanel {
 		public static BufferedImage L;
 		public static BufferedImage Z;
 		public static BufferedImage S;
-		// initialize image
+		// image of a cell of a garbage line, a grey block
+		public static BufferedImage GARBAGE;
+		// image of each shape type, indexed by ordinal
+		private static final BufferedImage[] BLOCKS = new BufferedImage[ShapeType.values().length];
+		// initialize image from classpath, so it works from a jar as well
 		static {
 			try {
-				String classPath = GameView.class.getResource("").getPath();
-				String sourceBasePath = classPath.replace("bin", "src") + "resources/";
-				background = ImageIO.read(new File(sourceBasePath + "background.png"));
-				gameOver= ImageIO.read(new File(sourceBasePath + "game-over.png"));
-				O = ImageIO.read(new File(sourceBasePath + "O.png"));
-				I = ImageIO.read(new File(sourceBasePath + "I.png"));
-				T = ImageIO.read(new File(sourceBasePath + "T.png"));
-				J = ImageIO.read(new File(sourceBasePath + "L.png"));
-				L = ImageIO.read(new File(sourceBasePath + "J.png"));
-				Z = ImageIO.read(new File(sourceBasePath + "Z.png"));
-				S = ImageIO.read(new File(sourceBasePath + "S.png"));
+				background = toCompatible(read("resources/background.png"), Transparency.OPAQUE);
+				gameOver = toCompatible(read("resources/game-over.png"), Transparency.TRANSLUCENT);
+				BufferedImage atlas = read("resources/blocks.png");
+				for(ShapeType shapeType : ShapeType.values()) {
+					BufferedImage sprite = atlas.getSubimage(shapeType.ordinal() * SPRITE_SIZE, 0, SPRITE_SIZE, SPRITE_SIZE);
+					// copied into an image of its own, so that every sprite can be cached by the pipeline
+					BLOCKS[shapeType.ordinal()] = toCompatible(sprite, Transparency.TRANSLUCENT);
+				}
+				// made from the first sprite, so garbage has the same bevel as the blocks of shapes
+				GARBAGE = toCompatible(grey(atlas.getSubimage(0, 0, SPRITE_SIZE, SPRITE_SIZE)), Transparency.TRANSLUCENT);
 			} catch (IOException e) {
 				throw new RuntimeException("cannot load image resources");
 			}
+			O = of(ShapeType.O);
+			I = of(ShapeType.I);
+			T = of(ShapeType.T);
+			J = of(ShapeType.J);
+			L = of(ShapeType.L);
+			Z = of(ShapeType.Z);
+			S = of(ShapeType.S);
+		}
+		private static BufferedImage read(String name) throws IOException {
+			InputStream inputStream = GameView.class.getResourceAsStream(name);
+			if(inputStream == null) {
+				throw new IOException("missing resource " + name);
+			}
+			try {
+				return ImageIO.read(inputStream);
+			} finally {
+				inputStream.close();
+			}
+		}
+		// copy of a sprite in shades of grey, alpha is kept
+		private static BufferedImage grey(BufferedImage sprite) {
+			BufferedImage image = new BufferedImage(sprite.getWidth(), sprite.getHeight(), BufferedImage.TYPE_INT_ARGB);
+			for(int y = 0; y < sprite.getHeight(); y++) {
+				for(int x = 0; x < sprite.getWidth(); x++) {
+					int argb = sprite.getRGB(x, y);
+					int luma = ((argb >> 16 & 0xFF) * 299 + (argb >> 8 & 0xFF) * 587 + (argb & 0xFF) * 114) / 1000;
+					image.setRGB(x, y, argb & 0xFF000000 | luma << 16 | luma << 8 | luma);
+				}
+			}
+			return image;
+		}
+		/**
+		 * convert an image once into the pixel format of the screen, so drawing it
+		 * never has to convert formats; headless, the image is kept as loaded
+		 */
+		private static BufferedImage toCompatible(BufferedImage image, int transparency) {
+			if(GraphicsEnvironment.isHeadless()) {
+				return image;
+			}
+			GraphicsConfiguration configuration = GraphicsEnvironment.getLocalGraphicsEnvironment()
+					.getDefaultScreenDevice().getDefaultConfiguration();
+			BufferedImage compatible = configuration.createCompatibleImage(image.getWidth(), image.getHeight(), transparency);
+			Graphics2D graphics = compatible.createGraphics();
+			graphics.drawImage(image, 0, 0, null);
+			graphics.dispose();
+			return compatible;
+		}
+		// image of the given shape type
+		public static BufferedImage of(ShapeType shapeType) {
+			return BLOCKS[shapeType.ordinal()];
 		}
 	}
 }
\ No newline at end of file
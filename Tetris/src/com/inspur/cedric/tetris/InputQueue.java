@@ -0,0 +1,78 @@
+package com.inspur.cedric.tetris;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * lock-free single-producer/single-consumer ring buffer of timestamped input commands;
+ * exactly one thread may offer and exactly one other thread may drain
+ */
+public class InputQueue {
+	private final int mask;
+	private final int[] commands;
+	private final long[] timestamps;
+	// indicates sequence of next slot to read, written by consumer only
+	private final AtomicLong head;
+	// indicates sequence of next slot to write, written by producer only
+	private final AtomicLong tail;
+	// producer's last view of head, saves reading it on every offer
+	private long headCache;
+	/**
+	 * constructor, capacity is rounded up to a power of two
+	 */
+	public InputQueue(int capacity) {
+		if(capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("illegal capacity: " + capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity) {
+			size <<= 1;
+		}
+		mask = size - 1;
+		commands = new int[size];
+		timestamps = new long[size];
+		head = new AtomicLong();
+		tail = new AtomicLong();
+	}
+	/**
+	 * GETTER: capacity, size
+	 */
+	public int getCapacity() { return mask + 1; }
+	public int size() { return (int) (tail.get() - head.get()); }
+	/**
+	 * producer side: enqueue a command, returns false if the queue is full
+	 */
+	public boolean offer(int command, long timestamp) {
+		long t = tail.get();
+		if(t - headCache > mask) {
+			headCache = head.get();
+			if(t - headCache > mask) {
+				return false;
+			}
+		}
+		int slot = (int) t & mask;
+		commands[slot] = command;
+		timestamps[slot] = timestamp;
+		// ordered store publishes the slot before the new tail becomes visible
+		tail.lazySet(t + 1);
+		return true;
+	}
+	/**
+	 * consumer side: hand every queued command to the handler, returns how many were drained
+	 */
+	public int drain(Handler handler) {
+		long h = head.get();
+		long t = tail.get();
+		for(long i = h; i < t; i++) {
+			int slot = (int) i & mask;
+			handler.input(commands[slot], timestamps[slot]);
+		}
+		if(t != h) {
+			head.lazySet(t);
+		}
+		return (int) (t - h);
+	}
+	/**********************************************************/
+	public interface Handler {
+		void input(int command, long timestamp);
+	}
+}
@@ -0,0 +1,75 @@
+package com.inspur.cedric.tetris;
+
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+import com.inspur.cedric.tetris.random.PieceGenerator;
+
+/**
+ * coming shapes of a game in a ring buffer, always holding depth shapes:
+ * taking one refills the tail from the generator, so advancing allocates nothing
+ */
+class PieceQueue {
+	private final ShapeType[] ring;
+	private final int mask;
+	// indicates how many shapes are queued
+	private final int depth;
+	// indicates where the first queued shape is
+	private int head;
+	// indicates how many shapes have been taken, changes whenever the queue does
+	private long dealt;
+	private PieceGenerator generator;
+	/**
+	 * constructor
+	 */
+	PieceQueue(PieceGenerator generator, int depth) {
+		if(depth < 1) {
+			throw new IllegalArgumentException("queue depth must be positive: " + depth);
+		}
+		this.generator = generator;
+		this.depth = depth;
+		// one slot more than depth, so the tail can be refilled before head moves on
+		ring = new ShapeType[Integer.highestOneBit(depth) << 1];
+		mask = ring.length - 1;
+		for(int i = 0; i < depth; i++) {
+			ring[i] = generator.next();
+		}
+	}
+	/**
+	 * GETTER: depth, dealt, generator
+	 */
+	int getDepth() { return depth; }
+	long getDealt() { return dealt; }
+	PieceGenerator getGenerator() { return generator; }
+	/**
+	 * shape at the position of the queue, 0 is the next one
+	 */
+	ShapeType peek(int position) {
+		if(position < 0 || position >= depth) {
+			throw new IndexOutOfBoundsException("no shape " + position + " in queue of " + depth);
+		}
+		return ring[(head + position) & mask];
+	}
+	/**
+	 * take the next shape
+	 */
+	ShapeType poll() {
+		ShapeType shapeType = ring[head];
+		ring[(head + depth) & mask] = generator.next();
+		head = (head + 1) & mask;
+		++dealt;
+		return shapeType;
+	}
+	void copyTo(ShapeType[] shapes) {
+		for(int i = 0; i < depth; i++) {
+			shapes[i] = ring[(head + i) & mask];
+		}
+	}
+	/**
+	 * put back shapes copied by copyTo, with the generator as it was then
+	 */
+	void restore(ShapeType[] shapes, long dealt, PieceGenerator generator) {
+		System.arraycopy(shapes, 0, ring, 0, depth);
+		head = 0;
+		this.dealt = dealt;
+		this.generator = generator;
+	}
+}
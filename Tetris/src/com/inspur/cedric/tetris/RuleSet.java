@@ -0,0 +1,238 @@
+package com.inspur.cedric.tetris;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Properties;
+
+import com.inspur.cedric.tetris.random.BagGenerator;
+import com.inspur.cedric.tetris.random.HistoryGenerator;
+import com.inspur.cedric.tetris.random.PieceGenerator;
+import com.inspur.cedric.tetris.random.SplitMix64;
+import com.inspur.cedric.tetris.random.UniformGenerator;
+
+/**
+ * rules a game is played by, shared by model, view and controller; immutable, so one
+ * instance can be used by any number of games on any thread
+ */
+public class RuleSet {
+	// indicates limits of board size: I shape needs 4 columns and rows, a row mask holds at most 64 columns
+	public static final int MIN_SIZE = 4;
+	// indicates tallest board, a keyframe of the widest one still fits the 16-bit length of a message of net.Protocol
+	public static final int MAX_HEIGHT = 1000;
+	// indicates most shapes that can be previewed
+	public static final int MAX_PREVIEWS = 6;
+	// indicates most levels a gravity table can have, so encoded rules stay small
+	public static final int MAX_LEVELS = 1000;
+	// indicates the rules the game has always had: 10x20, 20 scores per line, one preview, no hold
+	public static final RuleSet CLASSIC = new RuleSet(10, 20, new int[] { 60, 48, 37, 28, 21, 16, 11, 8, 6, 4, 3, 2, 1 },
+			new int[] { 0, 20, 40, 60, 80 }, Randomizer.UNIFORM, 1, false, Scoring.CLASSIC);
+	// indicates classic rules with a 7-bag, five previews, hold and guideline scoring
+	public static final RuleSet MODERN = new RuleSet(10, 20, CLASSIC.gravity, CLASSIC.lineScores, Randomizer.BAG, 5, true,
+			Scoring.GUIDELINE);
+	// width & height of board
+	private final int width;
+	private final int height;
+	// indicates ticks per row of gravity for each level, the last one applies to every higher level
+	private final int[] gravity;
+	// indicates scores for erasing 0, 1, 2, ... lines with one shape
+	private final int[] lineScores;
+	private final Randomizer randomizer;
+	// indicates how many coming shapes are shown, 0 hides them
+	private final int previews;
+	// indicates whether current shape can be put aside once per shape
+	private final boolean hold;
+	private final Scoring scoring;
+	/**
+	 * constructor
+	 */
+	public RuleSet(int width, int height, int[] gravity, int[] lineScores, Randomizer randomizer, int previews, boolean hold,
+			Scoring scoring) {
+		if(width < MIN_SIZE || width > BitBoard.MAX_WIDTH || height < MIN_SIZE || height > MAX_HEIGHT) {
+			throw new IllegalArgumentException("illegal board size: " + width + "x" + height + ", width must be " + MIN_SIZE + " to "
+					+ BitBoard.MAX_WIDTH + " and height " + MIN_SIZE + " to " + MAX_HEIGHT);
+		}
+		if(gravity.length == 0 || gravity.length > MAX_LEVELS) {
+			throw new IllegalArgumentException("gravity table needs 1 to " + MAX_LEVELS + " levels: " + gravity.length);
+		}
+		for(int ticks : gravity) {
+			if(ticks < 1) {
+				throw new IllegalArgumentException("gravity must be at least 1 tick per row: " + Arrays.toString(gravity));
+			}
+		}
+		// a shape covers at most 4 rows
+		if(lineScores.length != 5) {
+			throw new IllegalArgumentException("scoring table needs scores for 0 to 4 lines: " + Arrays.toString(lineScores));
+		}
+		if(previews < 0 || previews > MAX_PREVIEWS) {
+			throw new IllegalArgumentException("previews must be between 0 and " + MAX_PREVIEWS + ": " + previews);
+		}
+		this.width = width;
+		this.height = height;
+		this.gravity = gravity.clone();
+		this.lineScores = lineScores.clone();
+		this.randomizer = randomizer;
+		this.previews = previews;
+		this.hold = hold;
+		this.scoring = scoring;
+	}
+	/**
+	 * GETTER: width, height, randomizer, previews, hold, scoring
+	 */
+	public int getWidth() { return width; }
+	public int getHeight() { return height; }
+	public Randomizer getRandomizer() { return randomizer; }
+	public int getPreviews() { return previews; }
+	public boolean hasHold() { return hold; }
+	public Scoring getScoring() { return scoring; }
+	/**
+	 * ticks per row at the level
+	 */
+	public int gravityOf(int level) {
+		return gravity[Math.min(Math.max(level, 1), gravity.length) - 1];
+	}
+	/**
+	 * scores for erasing lines with one shape, which guideline scoring does not use
+	 */
+	public int scoreOf(int lines) {
+		return lineScores[lines];
+	}
+	/**
+	 * column a shape spawns at is moved by this, so shapes spawn in the middle of any board
+	 */
+	public int getSpawnShift() {
+		return (width - CLASSIC.width) / 2;
+	}
+	/**
+	 * same rules on a board of another size, e.g. for variants and scaling benchmarks
+	 */
+	public RuleSet withSize(int width, int height) {
+		return new RuleSet(width, height, gravity, lineScores, randomizer, previews, hold, scoring);
+	}
+	/**
+	 * rules changed by properties, so variants need no recompiling: tetris.rules (classic or modern)
+	 * picks the rules to start from, which tetris.width, tetris.height, tetris.gravity and tetris.scores
+	 * (comma separated), tetris.randomizer, tetris.previews, tetris.hold and tetris.scoring change
+	 */
+	public static RuleSet fromProperties(Properties properties) {
+		String name = properties.getProperty("tetris.rules", "classic");
+		RuleSet rules;
+		if(name.equalsIgnoreCase("classic")) {
+			rules = CLASSIC;
+		} else if(name.equalsIgnoreCase("modern")) {
+			rules = MODERN;
+		} else {
+			throw new IllegalArgumentException("unknown rules: " + name);
+		}
+		return new RuleSet(Integer.parseInt(properties.getProperty("tetris.width", String.valueOf(rules.width))),
+				Integer.parseInt(properties.getProperty("tetris.height", String.valueOf(rules.height))),
+				parseInts(properties.getProperty("tetris.gravity"), rules.gravity),
+				parseInts(properties.getProperty("tetris.scores"), rules.lineScores),
+				Randomizer.valueOf(properties.getProperty("tetris.randomizer", rules.randomizer.name()).toUpperCase()),
+				Integer.parseInt(properties.getProperty("tetris.previews", String.valueOf(rules.previews))),
+				Boolean.parseBoolean(properties.getProperty("tetris.hold", String.valueOf(rules.hold))),
+				Scoring.valueOf(properties.getProperty("tetris.scoring", rules.scoring.name()).toUpperCase()));
+	}
+	/**
+	 * rules in a few bytes, for files that are played again by the rules they were recorded with:
+	 * short width, short height, byte randomizer, previews, hold and scoring, int scores for 0 to 4 lines,
+	 * short number of gravity levels and int ticks of each
+	 */
+	public byte[] toBytes() {
+		ByteBuffer buffer = ByteBuffer.allocate(12 + 4 * lineScores.length + 2 + 4 * gravity.length);
+		buffer.putShort((short) width).putShort((short) height).put((byte) randomizer.ordinal()).put((byte) previews)
+				.put((byte) (hold ? 1 : 0)).put((byte) scoring.ordinal());
+		for(int score : lineScores) {
+			buffer.putInt(score);
+		}
+		buffer.putShort((short) gravity.length);
+		for(int ticks : gravity) {
+			buffer.putInt(ticks);
+		}
+		return buffer.array();
+	}
+	/**
+	 * rules read back from toBytes, IllegalArgumentException is thrown if the bytes are no rules
+	 */
+	public static RuleSet fromBytes(ByteBuffer buffer) {
+		try {
+			int width = buffer.getShort(), height = buffer.getShort();
+			Randomizer randomizer = valueOf(Randomizer.values(), buffer.get());
+			int previews = buffer.get();
+			boolean hold = buffer.get() != 0;
+			Scoring scoring = valueOf(Scoring.values(), buffer.get());
+			int[] lineScores = new int[5];
+			for(int i = 0; i < lineScores.length; i++) {
+				lineScores[i] = buffer.getInt();
+			}
+			int levels = buffer.getShort();
+			if(levels < 1 || levels > MAX_LEVELS) {
+				throw new IllegalArgumentException("gravity table needs 1 to " + MAX_LEVELS + " levels: " + levels);
+			}
+			int[] gravity = new int[levels];
+			for(int i = 0; i < levels; i++) {
+				gravity[i] = buffer.getInt();
+			}
+			return new RuleSet(width, height, gravity, lineScores, randomizer, previews, hold, scoring);
+		} catch(BufferUnderflowException e) {
+			throw new IllegalArgumentException("rules end too early", e);
+		}
+	}
+	private static <E> E valueOf(E[] values, int ordinal) {
+		if(ordinal < 0 || ordinal >= values.length) {
+			throw new IllegalArgumentException("unknown " + values.getClass().getComponentType().getSimpleName().toLowerCase()
+					+ ": " + ordinal);
+		}
+		return values[ordinal];
+	}
+	private static int[] parseInts(String value, int[] defaults) {
+		if(value == null) {
+			return defaults;
+		}
+		String[] parts = value.split(",");
+		int[] ints = new int[parts.length];
+		for(int i = 0; i < parts.length; i++) {
+			ints[i] = Integer.parseInt(parts[i].trim());
+		}
+		return ints;
+	}
+	/**
+	 * toString override
+	 */
+	public String toString() {
+		StringBuilder sBuilder = new StringBuilder();
+		sBuilder.append("rules: ").append(width).append("x").append(height).append(", gravity ").append(Arrays.toString(gravity))
+				.append(", scores ").append(Arrays.toString(lineScores)).append(", ").append(randomizer)
+				.append(", previews ").append(previews).append(hold ? ", hold" : "").append(", ").append(scoring);
+		return sBuilder.toString();
+	}
+	/**********************************************************/
+	public enum Randomizer {
+		// each shape is drawn independently with equal chance
+		UNIFORM {
+			@Override
+			public PieceGenerator create(SplitMix64 random) { return new UniformGenerator(random); }
+		},
+		// one of each shape in every 7
+		BAG {
+			@Override
+			public PieceGenerator create(SplitMix64 random) { return new BagGenerator(random); }
+		},
+		// shapes among the last 4 are redrawn a few times
+		HISTORY {
+			@Override
+			public PieceGenerator create(SplitMix64 random) { return new HistoryGenerator(random); }
+		};
+		/**
+		 * generator of this kind drawing from the stream
+		 */
+		public abstract PieceGenerator create(SplitMix64 random);
+	}
+	/**********************************************************/
+	public enum Scoring {
+		// scores of the line table for each lock, nothing else
+		CLASSIC,
+		// line clears, T-spins and minis times the level, back-to-back and combo bonuses, points for dropping
+		GUIDELINE
+	}
+}
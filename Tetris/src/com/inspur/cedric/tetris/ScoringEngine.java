@@ -0,0 +1,122 @@
+package com.inspur.cedric.tetris;
+
+import com.inspur.cedric.tetris.ClearResult.TSpin;
+import com.inspur.cedric.tetris.RuleSet.Scoring;
+
+/**
+ * scores, lines, level and gravity of a game, driven by the clear events of its model: a lock is
+ * scored from the ClearResult the model has built out of the rows the locked shape covers, so no
+ * row of the board is ever looked at again
+ */
+public class ScoringEngine {
+	// indicates how many erased lines raise the level by one
+	public static final int LINES_PER_LEVEL = 10;
+	// indicates guideline points for erasing 0, 1, 2, ... lines, at level 1
+	private static final int[] PLAIN = { 0, 100, 300, 500, 800 };
+	private static final int[] MINI = { 100, 200, 400 };
+	private static final int[] FULL = { 400, 800, 1200, 1600 };
+	// indicates guideline points per lock in a row that erased lines, at level 1
+	private static final int COMBO = 50;
+	// indicates points per row a shape is dropped by hand
+	private static final int SOFT_DROP = 1;
+	private static final int HARD_DROP = 2;
+	private final RuleSet ruleSet;
+	private int scores;
+	private int lines;
+	private int level;
+	// indicates ticks per row at current level, looked up once per level
+	private int gravity;
+	// indicates whether the last lock that erased lines was a difficult one, a tetris or a T-spin
+	private boolean backToBack;
+	// indicates points of the last lock
+	private int lastPoints;
+	/**
+	 * constructor
+	 */
+	public ScoringEngine(RuleSet ruleSet) {
+		this.ruleSet = ruleSet;
+		reset();
+	}
+	/**
+	 * GETTER: scores, lines, level, gravity, backToBack, lastPoints
+	 */
+	public int getScores() { return scores; }
+	public int getLines() { return lines; }
+	public int getLevel() { return level; }
+	public int getGravity() { return gravity; }
+	public boolean isBackToBack() { return backToBack; }
+	public int getLastPoints() { return lastPoints; }
+	/**
+	 * score a lock; returns points awarded
+	 */
+	public int lock(ClearResult clear) {
+		int cleared = clear.getLines();
+		int points;
+		if(ruleSet.getScoring() == Scoring.CLASSIC) {
+			points = ruleSet.scoreOf(cleared);
+		} else {
+			TSpin tSpin = clear.getTSpin();
+			// a T-spin mini erases at most 2 lines and a T-spin at most 3, a T never covers more rows
+			points = tSpin == TSpin.FULL ? FULL[Math.min(cleared, FULL.length - 1)]
+					: tSpin == TSpin.MINI ? MINI[Math.min(cleared, MINI.length - 1)] : PLAIN[cleared];
+			if(cleared > 0) {
+				// a lock that erases nothing neither breaks nor goes on with back-to-back
+				boolean difficult = cleared == 4 || tSpin != TSpin.NONE;
+				if(difficult && backToBack) {
+					points += points / 2;
+				}
+				backToBack = difficult;
+				points += COMBO * clear.getCombo();
+			}
+			points *= level;
+		}
+		lastPoints = points;
+		scores += points;
+		if(cleared > 0) {
+			setLines(lines + cleared);
+		}
+		return points;
+	}
+	/**
+	 * score rows a shape has been moved down by hand
+	 */
+	public void softDrop(int rows) {
+		if(ruleSet.getScoring() == Scoring.GUIDELINE) {
+			scores += SOFT_DROP * rows;
+		}
+	}
+	public void hardDrop(int rows) {
+		if(ruleSet.getScoring() == Scoring.GUIDELINE) {
+			scores += HARD_DROP * rows;
+		}
+	}
+	public void reset() {
+		restore(0, 0, false, 0);
+	}
+	/**
+	 * bring scoring back to an earlier state of the game
+	 */
+	public void restore(int scores, int lines, boolean backToBack, int lastPoints) {
+		this.scores = scores;
+		this.backToBack = backToBack;
+		this.lastPoints = lastPoints;
+		setLines(lines);
+	}
+	private void setLines(int lines) {
+		this.lines = lines;
+		int level = 1 + lines / LINES_PER_LEVEL;
+		if(level != this.level) {
+			this.level = level;
+			gravity = ruleSet.gravityOf(level);
+		}
+	}
+	/**
+	 * toString override
+	 */
+	public String toString() {
+		StringBuilder sBuilder = new StringBuilder();
+		sBuilder.append("scoring: ").append(scores).append(" scores, ").append(lines).append(" lines, level ").append(level)
+				.append(backToBack ? ", back-to-back" : "");
+		return sBuilder.toString();
+	}
+}
@@ -0,0 +1,46 @@
+package com.inspur.cedric.tetris.ai;
+
+import com.inspur.cedric.tetris.GameModel;
+import com.inspur.cedric.tetris.sim.MovePolicy;
+
+/**
+ * plays the best placement that move search finds for each shape
+ */
+public class AIPlayer implements MovePolicy {
+	// indicates buckets of the cache of a default player, boards of a few hundred searches
+	private static final int CACHE_BUCKETS = 1 << 15;
+	private final MoveSearch moveSearch;
+	/**
+	 * constructor
+	 */
+	public AIPlayer() {
+		this(new MoveSearch(new WeightedEvaluator(), true, new EvaluationCache(CACHE_BUCKETS)));
+	}
+	public AIPlayer(MoveSearch moveSearch) {
+		this.moveSearch = moveSearch;
+	}
+	/**
+	 * GETTER: moveSearch
+	 */
+	public MoveSearch getMoveSearch() { return moveSearch; }
+	@Override
+	public void newGame(long seed) {
+		// search is deterministic, nothing to reseed
+	}
+	@Override
+	public void play(GameModel gameModel) {
+		Placement placement = moveSearch.search(gameModel);
+		if(placement != null) {
+			for(int i = 0; i < placement.getRotations(); i++) {
+				gameModel.rotate();
+			}
+			for(int i = 0; i < placement.getShift(); i++) {
+				gameModel.moveRight();
+			}
+			for(int i = 0; i > placement.getShift(); i--) {
+				gameModel.moveLeft();
+			}
+		}
+		gameModel.moveDownToBottom();
+	}
+}
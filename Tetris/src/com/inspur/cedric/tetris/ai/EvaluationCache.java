@@ -0,0 +1,88 @@
+package com.inspur.cedric.tetris.ai;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * bounded table of scores by 64-bit key, e.g. a board hash, shared by any number of search threads
+ * without locks: each bucket has two slots, a new key goes into the first and moves its entry to the
+ * second, whose entry is evicted. a slot keeps key XOR value next to the value, so a slot that another
+ * thread is writing half reads as a miss rather than as a wrong score (the lockless hashing of chess programs);
+ * keys are taken as unique, a search must only share a cache with searches of the same evaluator
+ */
+public class EvaluationCache {
+	private final int mask;
+	// indicates key XOR value bits, and value bits, of each slot; slots 2i and 2i+1 are bucket i
+	private final AtomicLongArray checks;
+	private final AtomicLongArray values;
+	private final LongAdder hits;
+	private final LongAdder misses;
+	/**
+	 * constructor, buckets are rounded up to a power of two
+	 */
+	public EvaluationCache(int buckets) {
+		if(buckets < 1 || buckets > 1 << 28) {
+			throw new IllegalArgumentException("illegal buckets: " + buckets);
+		}
+		int size = Integer.highestOneBit(buckets);
+		if(size < buckets) {
+			size <<= 1;
+		}
+		mask = size - 1;
+		checks = new AtomicLongArray(size * 2);
+		values = new AtomicLongArray(size * 2);
+		hits = new LongAdder();
+		misses = new LongAdder();
+	}
+	/**
+	 * GETTER: capacity, hits, misses
+	 */
+	public int getCapacity() { return values.length(); }
+	public long getHits() { return hits.sum(); }
+	public long getMisses() { return misses.sum(); }
+	/**
+	 * score of the key, NaN if it is not cached
+	 */
+	public double get(long key) {
+		key = nonZero(key);
+		int slot = slotOf(key);
+		for(int i = slot; i < slot + 2; i++) {
+			long value = values.getOpaque(i);
+			if((checks.getOpaque(i) ^ value) == key) {
+				hits.increment();
+				return Double.longBitsToDouble(value);
+			}
+		}
+		misses.increment();
+		return Double.NaN;
+	}
+	public void put(long key, double score) {
+		key = nonZero(key);
+		int slot = slotOf(key);
+		long value = Double.doubleToRawLongBits(score);
+		// a key already in the first slot is just updated, otherwise the first entry is kept as the second
+		if((checks.getOpaque(slot) ^ values.getOpaque(slot)) != key) {
+			long first = values.getOpaque(slot);
+			checks.setOpaque(slot + 1, checks.getOpaque(slot));
+			values.setOpaque(slot + 1, first);
+		}
+		checks.setOpaque(slot, key ^ value);
+		values.setOpaque(slot, value);
+	}
+	public void clear() {
+		for(int i = 0; i < values.length(); i++) {
+			checks.set(i, 0L);
+			values.set(i, 0L);
+		}
+		hits.reset();
+		misses.reset();
+	}
+	private int slotOf(long key) {
+		// keys are hashes already, their high bits pick the bucket
+		return ((int) (key >>> 32) & mask) << 1;
+	}
+	// an empty slot reads as key 0 with score 0
+	private static long nonZero(long key) {
+		return key == 0L ? 1L : key;
+	}
+}
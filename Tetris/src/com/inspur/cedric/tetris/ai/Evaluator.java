@@ -0,0 +1,13 @@
+package com.inspur.cedric.tetris.ai;
+
+import com.inspur.cedric.tetris.Board;
+
+/**
+ * heuristic of move search, the higher the score the better the board
+ */
+public interface Evaluator {
+	/**
+	 * score a board that results from placing shapes which erased the given number of lines
+	 */
+	double evaluate(Board board, int lines);
+}
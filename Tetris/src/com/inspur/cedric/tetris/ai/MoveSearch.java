@@ -0,0 +1,195 @@
+package com.inspur.cedric.tetris.ai;
+
+import com.inspur.cedric.tetris.BitBoard;
+import com.inspur.cedric.tetris.Board;
+import com.inspur.cedric.tetris.GameModel;
+import com.inspur.cedric.tetris.GameShape;
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+import com.inspur.cedric.tetris.random.SplitMix64;
+
+/**
+ * enumerates every placement the current shape can reach by rotating, shifting and
+ * dropping, optionally followed by every placement of the next shape, and keeps the
+ * best one; placements are tried on scratch boards that are reused between searches and are
+ * set back to the board searched from by sharing its type rows, so a placement copies only the rows it writes;
+ * an instance must not be shared between threads; an optional cache keyed by board hash skips boards
+ * scored before, e.g. the same placement reached by another rotation, and may be shared between threads
+ */
+public class MoveSearch {
+	// score of a placement that ends the game
+	private static final double LOST = Double.NEGATIVE_INFINITY;
+	private final Evaluator evaluator;
+	// indicates whether next shape is searched too
+	private final boolean lookahead;
+	// indicates scores of boards and of searches of next shape on them, may be null
+	private final EvaluationCache cache;
+	// indicates scratch board of each search depth
+	private BitBoard[] scratch;
+	// indicates how many boards have been evaluated
+	private long evaluations;
+	// best placement found at the depth being searched
+	private int bestRotations;
+	private int bestShift;
+	private double bestScore;
+	/**
+	 * constructor
+	 */
+	public MoveSearch(Evaluator evaluator, boolean lookahead) {
+		this(evaluator, lookahead, null);
+	}
+	public MoveSearch(Evaluator evaluator, boolean lookahead, EvaluationCache cache) {
+		this.evaluator = evaluator;
+		this.lookahead = lookahead;
+		this.cache = cache;
+		scratch = new BitBoard[2];
+	}
+	/**
+	 * GETTER: evaluator, lookahead, cache, evaluations
+	 */
+	public Evaluator getEvaluator() { return evaluator; }
+	public boolean isLookahead() { return lookahead; }
+	public EvaluationCache getCache() { return cache; }
+	public long getEvaluations() { return evaluations; }
+	/**
+	 * best placement of the current shape of a game, null if the shape cannot be placed at all
+	 */
+	public Placement search(GameModel gameModel) {
+		return search(gameModel.getBoard(), gameModel.getCurrentShape(), lookahead ? gameModel.getNextShape() : null);
+	}
+	public Placement search(Board board, GameShape currentShape, GameShape nextShape) {
+		prepare(board);
+		bestScore = LOST;
+		bestRotations = -1;
+		bestShift = 0;
+		ShapeType shapeType = currentShape.getShapeType();
+		int row = currentShape.getRow(), col = currentShape.getCol(), orientation = currentShape.getOrientation();
+		for(int rotations = 0; rotations < rotationsOf(shapeType); rotations++) {
+			int rotated = (orientation + rotations) & 3;
+			// a blocked rotation stays blocked, so no further orientation is reachable
+			if(!board.fits(shapeType, rotated, row, col)) {
+				break;
+			}
+			for(int c = col; board.fits(shapeType, rotated, row, c); c--) {
+				double score = tryPlacement(board, scratch[0], shapeType, rotated, row, c, nextShape);
+				keepBest(score, rotations, c - col);
+			}
+			for(int c = col + 1; board.fits(shapeType, rotated, row, c); c++) {
+				double score = tryPlacement(board, scratch[0], shapeType, rotated, row, c, nextShape);
+				keepBest(score, rotations, c - col);
+			}
+		}
+		return bestRotations < 0 ? null : new Placement(bestRotations, bestShift, bestScore);
+	}
+	private void keepBest(double score, int rotations, int shift) {
+		if(bestRotations < 0 || score > bestScore) {
+			bestScore = score;
+			bestRotations = rotations;
+			bestShift = shift;
+		}
+	}
+	/**
+	 * drop the shape on a copy of the board and score the result
+	 */
+	private double tryPlacement(Board board, BitBoard target, ShapeType shapeType, int orientation, int row, int col,
+			GameShape nextShape) {
+		int landing = row + board.dropDistance(shapeType, orientation, row, col);
+		if(board instanceof BitBoard) {
+			target.shareFrom((BitBoard) board);
+		} else {
+			target.copyFrom(board);
+		}
+		if(!target.place(shapeType, orientation, landing, col)) {
+			return LOST;
+		}
+		int lines = target.clearFullLines(landing + minRowOffset(shapeType, orientation),
+				landing + maxRowOffset(shapeType, orientation));
+		if(nextShape == null) {
+			return evaluate(target, lines);
+		}
+		if(cache == null) {
+			return searchNext(target, nextShape, lines);
+		}
+		// best of next shape depends on where it spawns as well
+		long key = keyOf(target.getHash(), lines, nextShape.getShapeType().ordinal() + 1 | nextShape.getOrientation() << 3,
+				nextShape.getRow(), nextShape.getCol());
+		double score = cache.get(key);
+		if(Double.isNaN(score)) {
+			score = searchNext(target, nextShape, lines);
+			cache.put(key, score);
+		}
+		return score;
+	}
+	private double evaluate(BitBoard board, int lines) {
+		if(cache == null) {
+			++evaluations;
+			return evaluator.evaluate(board, lines);
+		}
+		long key = keyOf(board.getHash(), lines, 0, 0, 0);
+		double score = cache.get(key);
+		if(Double.isNaN(score)) {
+			++evaluations;
+			score = evaluator.evaluate(board, lines);
+			cache.put(key, score);
+		}
+		return score;
+	}
+	// key of a board and what else a score depends on, shape 0 for a board that is scored as it is
+	private static long keyOf(long hash, int lines, int shape, int row, int col) {
+		return SplitMix64.mix(hash ^ SplitMix64.mix((long) lines | (long) shape << 8 | (long) (row & 0xffff) << 16 | (long) (col & 0xffff) << 32));
+	}
+	/**
+	 * best score of the next shape on the board left by the current one
+	 */
+	private double searchNext(BitBoard board, GameShape nextShape, int lines) {
+		ShapeType shapeType = nextShape.getShapeType();
+		int row = nextShape.getRow(), col = nextShape.getCol(), orientation = nextShape.getOrientation();
+		double best = LOST;
+		for(int rotations = 0; rotations < rotationsOf(shapeType); rotations++) {
+			int rotated = (orientation + rotations) & 3;
+			if(!board.fits(shapeType, rotated, row, col)) {
+				break;
+			}
+			for(int c = col; board.fits(shapeType, rotated, row, c); c--) {
+				best = Math.max(best, tryLast(board, shapeType, rotated, row, c, lines));
+			}
+			for(int c = col + 1; board.fits(shapeType, rotated, row, c); c++) {
+				best = Math.max(best, tryLast(board, shapeType, rotated, row, c, lines));
+			}
+		}
+		return best;
+	}
+	private double tryLast(BitBoard board, ShapeType shapeType, int orientation, int row, int col, int firstLines) {
+		int landing = row + board.dropDistance(shapeType, orientation, row, col);
+		BitBoard target = scratch[1];
+		target.shareFrom(board);
+		if(!target.place(shapeType, orientation, landing, col)) {
+			return LOST;
+		}
+		int lines = target.clearFullLines(landing + minRowOffset(shapeType, orientation),
+				landing + maxRowOffset(shapeType, orientation));
+		return evaluate(target, firstLines + lines);
+	}
+	private void prepare(Board board) {
+		if(scratch[0] == null || scratch[0].getWidth() != board.getWidth() || scratch[0].getHeight() != board.getHeight()) {
+			scratch[0] = new BitBoard(board.getWidth(), board.getHeight());
+			scratch[1] = new BitBoard(board.getWidth(), board.getHeight());
+		}
+	}
+	private static int rotationsOf(ShapeType shapeType) {
+		return shapeType == ShapeType.O ? 1 : 4;
+	}
+	private static int minRowOffset(ShapeType shapeType, int orientation) {
+		int min = shapeType.rowOffset(orientation, 0);
+		for(int i = 1; i < 4; i++) {
+			min = Math.min(min, shapeType.rowOffset(orientation, i));
+		}
+		return min;
+	}
+	private static int maxRowOffset(ShapeType shapeType, int orientation) {
+		int max = shapeType.rowOffset(orientation, 0);
+		for(int i = 1; i < 4; i++) {
+			max = Math.max(max, shapeType.rowOffset(orientation, i));
+		}
+		return max;
+	}
+}
@@ -0,0 +1,37 @@
+package com.inspur.cedric.tetris.ai;
+
+/**
+ * where move search puts the current shape: rotate it, shift it, then drop it
+ */
+public class Placement {
+	// indicates how many times the shape rotates before shifting
+	private final int rotations;
+	// indicates how many columns the shape shifts, negative to the left
+	private final int shift;
+	// indicates score that evaluator gave the placement
+	private final double score;
+	/**
+	 * constructor
+	 */
+	public Placement(int rotations, int shift, double score) {
+		this.rotations = rotations;
+		this.shift = shift;
+		this.score = score;
+	}
+	/**
+	 * GETTER: rotations, shift, score
+	 */
+	public int getRotations() { return rotations; }
+	public int getShift() { return shift; }
+	public double getScore() { return score; }
+	/**
+	 * toString override
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sBuilder = new StringBuilder();
+		sBuilder.append("placement: ").append("(rotations ").append(rotations).append(", shift ").append(shift)
+				.append(", score ").append(score).append(")");
+		return sBuilder.toString();
+	}
+}
@@ -0,0 +1,259 @@
+package com.inspur.cedric.tetris.ai;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import com.inspur.cedric.tetris.RuleSet;
+import com.inspur.cedric.tetris.random.SplitMix64;
+import com.inspur.cedric.tetris.sim.GameStats;
+import com.inspur.cedric.tetris.sim.ParallelSimulator;
+
+/**
+ * tunes the weights of WeightedEvaluator by the cross-entropy method: each generation draws candidates
+ * from a normal distribution, plays them on the same seeds and fits the distribution to the best ones.
+ * a candidate is played in rounds, and after every round but the last the worse half is dropped, so
+ * hopeless candidates cost a fraction of the games; every game of a round runs at once on all cores
+ */
+public class WeightTuner {
+	private static final int FEATURES = WeightedEvaluator.FEATURES;
+	// indicates fraction of candidates the distribution is fitted to
+	private static final double ELITE = 0.25;
+	// indicates rounds a candidate is played in, the worse half is dropped after each but the last
+	private static final int ROUNDS = 3;
+	// indicates deviation added on every fit, decaying by generation, so the search does not settle too early
+	private static final double NOISE = 0.2;
+	private final ParallelSimulator simulator;
+	private final boolean lookahead;
+	private final int candidates;
+	private final int games;
+	private final SplitMix64 random;
+	// state of the search, what a checkpoint holds
+	private int generation;
+	private double[] mean;
+	private double[] deviation;
+	private double[] best;
+	private double bestFitness;
+	// statistics of this process
+	private long gamesPlayed;
+	private long playNanos;
+	/**
+	 * constructor, the search starts around the default weights
+	 */
+	public WeightTuner(ParallelSimulator simulator, boolean lookahead, int candidates, int games, long seed) {
+		if(candidates < 4 || games < ROUNDS) {
+			throw new IllegalArgumentException("need at least 4 candidates and " + ROUNDS + " games: " + candidates + ", " + games);
+		}
+		this.simulator = simulator;
+		this.lookahead = lookahead;
+		this.candidates = candidates;
+		this.games = games;
+		random = new SplitMix64(seed);
+		mean = new WeightedEvaluator().getWeights();
+		deviation = new double[FEATURES];
+		Arrays.fill(deviation, 0.5);
+		best = mean.clone();
+		bestFitness = Double.NEGATIVE_INFINITY;
+	}
+	/**
+	 * GETTER: generation, mean, deviation, best, bestFitness, games per second so far
+	 */
+	public int getGeneration() { return generation; }
+	public double[] getMean() { return mean.clone(); }
+	public double[] getDeviation() { return deviation.clone(); }
+	public double[] getBest() { return best.clone(); }
+	public double getBestFitness() { return bestFitness; }
+	public double getGamesPerSecond() { return playNanos == 0 ? 0 : gamesPlayed * 1e9 / playNanos; }
+	/**
+	 * play one generation and fit the distribution to it, returns fitness of its best candidate,
+	 * i.e. its average score over every game
+	 */
+	public double step() {
+		double[][] weights = new double[candidates][];
+		for(int i = 0; i < candidates; i++) {
+			weights[i] = sample();
+		}
+		// every candidate of a generation plays the same seeds, so luck does not pick the elite
+		long firstSeed = random.nextLong();
+		long[] scores = new long[candidates];
+		int[] played = new int[candidates];
+		List<Integer> alive = new ArrayList<Integer>();
+		for(int i = 0; i < candidates; i++) {
+			alive.add(i);
+		}
+		int elite = Math.max(2, (int) Math.round(candidates * ELITE));
+		for(int round = 0; round < ROUNDS; round++) {
+			int from = games * round / ROUNDS, to = games * (round + 1) / ROUNDS;
+			play(weights, alive, firstSeed, from, to, scores, played);
+			alive.sort((a, b) -> Double.compare(fitness(scores, played, b), fitness(scores, played, a)));
+			if(round < ROUNDS - 1) {
+				alive = new ArrayList<Integer>(alive.subList(0, Math.max(elite, alive.size() / 2)));
+			}
+		}
+		// survivors played every game and are sorted best first
+		elite = Math.min(elite, alive.size());
+		double[] eliteMean = new double[FEATURES], eliteDeviation = new double[FEATURES];
+		for(int i = 0; i < elite; i++) {
+			for(int f = 0; f < FEATURES; f++) {
+				eliteMean[f] += weights[alive.get(i)][f] / elite;
+			}
+		}
+		for(int i = 0; i < elite; i++) {
+			for(int f = 0; f < FEATURES; f++) {
+				double d = weights[alive.get(i)][f] - eliteMean[f];
+				eliteDeviation[f] += d * d / elite;
+			}
+		}
+		for(int f = 0; f < FEATURES; f++) {
+			eliteDeviation[f] = Math.sqrt(eliteDeviation[f]) + NOISE / (generation + 1);
+		}
+		mean = eliteMean;
+		deviation = eliteDeviation;
+		double fitness = fitness(scores, played, alive.get(0));
+		if(fitness > bestFitness) {
+			bestFitness = fitness;
+			best = weights[alive.get(0)].clone();
+		}
+		++generation;
+		return fitness;
+	}
+	// plays games [from, to) of the generation for every candidate alive, all in one batch
+	private void play(double[][] weights, List<Integer> alive, long firstSeed, int from, int to, long[] scores, int[] played) {
+		int count = to - from;
+		long[] seeds = new long[alive.size() * count];
+		int[] owners = new int[seeds.length];
+		for(int i = 0; i < alive.size(); i++) {
+			for(int g = 0; g < count; g++) {
+				seeds[i * count + g] = firstSeed + from + g;
+				owners[i * count + g] = alive.get(i);
+			}
+		}
+		long start = System.nanoTime();
+		List<GameStats> stats = simulator.run(seeds, index -> new AIPlayer(new MoveSearch(new WeightedEvaluator(weights[owners[index]]), lookahead)));
+		playNanos += System.nanoTime() - start;
+		gamesPlayed += seeds.length;
+		for(int i = 0; i < seeds.length; i++) {
+			scores[owners[i]] += stats.get(i).getScores();
+			++played[owners[i]];
+		}
+	}
+	private static double fitness(long[] scores, int[] played, int candidate) {
+		return played[candidate] == 0 ? 0 : (double) scores[candidate] / played[candidate];
+	}
+	// weights only matter relative to each other, so every sample is scaled to unit length
+	private double[] sample() {
+		double[] weights = new double[FEATURES];
+		double length = 0;
+		for(int f = 0; f < FEATURES; f++) {
+			weights[f] = mean[f] + deviation[f] * gaussian();
+			length += weights[f] * weights[f];
+		}
+		length = Math.sqrt(length);
+		for(int f = 0; f < FEATURES; f++) {
+			weights[f] = length == 0 ? 0 : weights[f] / length;
+		}
+		return weights;
+	}
+	// Box-Muller, one of the pair is thrown away
+	private double gaussian() {
+		double u = 1.0 - random.nextDouble();
+		return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+	}
+	/**
+	 * write the state of the search, so that a stopped run can go on from it; the file is replaced
+	 * at once, so a run stopped while saving keeps the checkpoint before
+	 */
+	public void save(Path file) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("generation", String.valueOf(generation));
+		properties.setProperty("mean", join(mean));
+		properties.setProperty("deviation", join(deviation));
+		properties.setProperty("best", join(best));
+		properties.setProperty("bestFitness", String.valueOf(bestFitness));
+		properties.setProperty("random", String.valueOf(random.getState()));
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try(Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			properties.store(writer, "weight tuner checkpoint, features: aggregate height, holes, bumpiness, lines");
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	/**
+	 * go on from a checkpoint written by save
+	 */
+	public void load(Path file) throws IOException {
+		Properties properties = new Properties();
+		try(Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		generation = Integer.parseInt(properties.getProperty("generation"));
+		mean = split(properties.getProperty("mean"));
+		deviation = split(properties.getProperty("deviation"));
+		best = split(properties.getProperty("best"));
+		bestFitness = Double.parseDouble(properties.getProperty("bestFitness"));
+		random.setState(Long.parseLong(properties.getProperty("random")));
+	}
+	private static String join(double[] values) {
+		StringBuilder sBuilder = new StringBuilder();
+		for(int i = 0; i < values.length; i++) {
+			sBuilder.append(i == 0 ? "" : ",").append(values[i]);
+		}
+		return sBuilder.toString();
+	}
+	private static double[] split(String value) {
+		String[] parts = value.split(",");
+		if(parts.length != FEATURES) {
+			throw new IllegalArgumentException("expect " + FEATURES + " values but got " + value);
+		}
+		double[] values = new double[FEATURES];
+		for(int i = 0; i < FEATURES; i++) {
+			values[i] = Double.parseDouble(parts[i].trim());
+		}
+		return values;
+	}
+	/**
+	 * entrance: WeightTuner [generations] [candidates] [games] [maxPieces] [checkpoint] [threads];
+	 * an existing checkpoint is gone on from and rewritten after every generation,
+	 * rules are changed by system properties, see RuleSet.fromProperties
+	 */
+	public static void main(String[] args) throws IOException {
+		int generations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int candidates = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+		int games = args.length > 2 ? Integer.parseInt(args[2]) : 12;
+		int maxPieces = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+		Path checkpoint = Paths.get(args.length > 4 ? args[4] : "tuner.properties");
+		int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+		RuleSet ruleSet = RuleSet.fromProperties(System.getProperties());
+		ParallelSimulator simulator = new ParallelSimulator(ruleSet, maxPieces, threads);
+		WeightTuner tuner = new WeightTuner(simulator, Boolean.parseBoolean(System.getProperty("tetris.tune.lookahead", "true")),
+				candidates, games, 42);
+		if(Files.exists(checkpoint)) {
+			tuner.load(checkpoint);
+			System.out.println("going on from generation " + tuner.getGeneration() + " of " + checkpoint);
+		}
+		while(tuner.getGeneration() < generations) {
+			double fitness = tuner.step();
+			tuner.save(checkpoint);
+			System.out.println(String.format("generation %d: best %.1f, mean %s, deviation %s, %.1f games/s on %d threads",
+					tuner.getGeneration(), fitness, Arrays.toString(round(tuner.getMean())), Arrays.toString(round(tuner.getDeviation())),
+					tuner.getGamesPerSecond(), simulator.getParallelism()));
+		}
+		System.out.println("best " + Arrays.toString(tuner.getBest()) + " scores " + tuner.getBestFitness());
+		simulator.shutdown();
+	}
+	private static double[] round(double[] values) {
+		double[] rounded = new double[values.length];
+		for(int i = 0; i < values.length; i++) {
+			rounded[i] = Math.round(values[i] * 1000) / 1000.0;
+		}
+		return rounded;
+	}
+}
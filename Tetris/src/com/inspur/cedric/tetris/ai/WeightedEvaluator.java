@@ -0,0 +1,66 @@
+package com.inspur.cedric.tetris.ai;
+
+import java.util.Arrays;
+
+import com.inspur.cedric.tetris.Board;
+
+/**
+ * linear combination of aggregate height, holes, bumpiness and erased lines
+ */
+public class WeightedEvaluator implements Evaluator {
+	// index of each feature in weights
+	public static final int AGGREGATE_HEIGHT = 0;
+	public static final int HOLES = 1;
+	public static final int BUMPINESS = 2;
+	public static final int LINES = 3;
+	public static final int FEATURES = 4;
+	// weights that play well on a standard board
+	private static final double[] DEFAULT_WEIGHTS = { -0.510066, -0.35663, -0.184483, 0.760666 };
+	private final double[] weights;
+	/**
+	 * constructor
+	 */
+	public WeightedEvaluator() {
+		this(DEFAULT_WEIGHTS);
+	}
+	public WeightedEvaluator(double[] weights) {
+		if(weights.length != FEATURES) {
+			throw new IllegalArgumentException("expect " + FEATURES + " weights but got " + weights.length);
+		}
+		this.weights = weights.clone();
+	}
+	/**
+	 * GETTER: weights
+	 */
+	public double[] getWeights() { return weights.clone(); }
+	@Override
+	public double evaluate(Board board, int lines) {
+		int width = board.getWidth(), height = board.getHeight();
+		int aggregateHeight = 0, bumpiness = 0, maxHeight = 0;
+		int previous = board.getColumnHeight(0);
+		for(int col = 0; col < width; col++) {
+			int columnHeight = board.getColumnHeight(col);
+			aggregateHeight += columnHeight;
+			bumpiness += Math.abs(columnHeight - previous);
+			maxHeight = Math.max(maxHeight, columnHeight);
+			previous = columnHeight;
+		}
+		// a hole is an empty cell with an occupied cell somewhere above it in the same column
+		int holes = 0;
+		long covered = 0L;
+		for(int row = height - maxHeight; row < height; row++) {
+			long mask = board.getRowMask(row);
+			holes += Long.bitCount(covered & ~mask);
+			covered |= mask;
+		}
+		return weights[AGGREGATE_HEIGHT] * aggregateHeight + weights[HOLES] * holes
+				+ weights[BUMPINESS] * bumpiness + weights[LINES] * lines;
+	}
+	/**
+	 * toString override
+	 */
+	@Override
+	public String toString() {
+		return "evaluator: " + Arrays.toString(weights);
+	}
+}
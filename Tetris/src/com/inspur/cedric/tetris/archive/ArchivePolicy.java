@@ -0,0 +1,70 @@
+package com.inspur.cedric.tetris.archive;
+
+import java.nio.ShortBuffer;
+
+import com.inspur.cedric.tetris.GameModel;
+import com.inspur.cedric.tetris.GameShape;
+import com.inspur.cedric.tetris.sim.MovePolicy;
+
+/**
+ * replays the placements of an archived game: each shape is rotated to its archived
+ * orientation, shifted to its archived column and dropped, the way AIPlayer moves it;
+ * a shape of another type than the archived one is held, if rules allow it
+ */
+public class ArchivePolicy implements MovePolicy {
+	private final ShortBuffer placements;
+	// indicates index of first placement that could not be replayed, -1 if none
+	private int mismatch;
+	/**
+	 * constructor
+	 */
+	public ArchivePolicy(ShortBuffer placements) {
+		this.placements = placements;
+		mismatch = -1;
+	}
+	/**
+	 * GETTER: mismatch
+	 */
+	public int getMismatch() { return mismatch; }
+	@Override
+	public void newGame(long seed) {
+		placements.rewind();
+		mismatch = -1;
+	}
+	@Override
+	public void play(GameModel gameModel) {
+		GameShape shape = gameModel.getCurrentShape();
+		if(!placements.hasRemaining()) {
+			if(mismatch < 0) {
+				mismatch = placements.position();
+			}
+			gameModel.moveDownToBottom();
+			return;
+		}
+		short placement = placements.get();
+		// a shape that was put aside comes back later in the placements
+		if(GameArchive.typeOf(placement) != shape.getShapeType().ordinal() && !gameModel.isHoldUsed()) {
+			gameModel.hold();
+			shape = gameModel.getCurrentShape();
+		}
+		if(GameArchive.typeOf(placement) != shape.getShapeType().ordinal() && mismatch < 0) {
+			mismatch = placements.position() - 1;
+		}
+		int rotations = GameArchive.orientationOf(placement) - shape.getOrientation() & 3;
+		for(int i = 0; i < rotations; i++) {
+			gameModel.rotate();
+		}
+		int shift = GameArchive.colOf(placement) - shape.getCol();
+		for(int i = 0; i < shift; i++) {
+			gameModel.moveRight();
+		}
+		for(int i = 0; i > shift; i--) {
+			gameModel.moveLeft();
+		}
+		if((shape.getOrientation() != GameArchive.orientationOf(placement) || shape.getCol() != GameArchive.colOf(placement))
+				&& mismatch < 0) {
+			mismatch = placements.position() - 1;
+		}
+		gameModel.moveDownToBottom();
+	}
+}
@@ -0,0 +1,253 @@
+package com.inspur.cedric.tetris.archive;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.inspur.cedric.tetris.BitBoard;
+import com.inspur.cedric.tetris.GameModel;
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+import com.inspur.cedric.tetris.RuleSet;
+import com.inspur.cedric.tetris.sim.BatchRunner;
+import com.inspur.cedric.tetris.sim.GameStats;
+
+/**
+ * read-only view of an archive: index and records are memory-mapped, so opening an
+ * archive costs one pass over the index and every game is read in place on demand;
+ * the data file is mapped in segments of at most MAX_SEGMENT bytes, split at record boundaries
+ */
+public class ArchiveReader implements Closeable {
+	public static final int MAX_SEGMENT = 1 << 30;
+	private static final ShapeType[] TYPES = ShapeType.values();
+	private final FileChannel data;
+	private final FileChannel index;
+	private final MappedByteBuffer entries;
+	private final int size;
+	// indicates rules every game of the archive was played by
+	private final RuleSet ruleSet;
+	// indicates mapped segments of data file and the file offset each starts at
+	private final MappedByteBuffer[] segments;
+	private final long[] segmentStarts;
+	// indicates game ids ordered by scores and by pieces, key in high half and id in low half
+	private final long[] byScores;
+	private final long[] byPieces;
+	/**
+	 * constructor
+	 */
+	public ArchiveReader(File base) throws IOException {
+		data = FileChannel.open(GameArchive.dataFile(base).toPath(), StandardOpenOption.READ);
+		index = FileChannel.open(GameArchive.indexFile(base).toPath(), StandardOpenOption.READ);
+		try {
+			long count = (index.size() - GameArchive.HEADER_SIZE) / GameArchive.ENTRY_SIZE;
+			if(index.size() < GameArchive.HEADER_SIZE || GameArchive.HEADER_SIZE + count * GameArchive.ENTRY_SIZE > Integer.MAX_VALUE) {
+				throw new IOException("bad index size: " + index.size());
+			}
+			size = (int) count;
+			entries = index.map(MapMode.READ_ONLY, 0, GameArchive.HEADER_SIZE + count * GameArchive.ENTRY_SIZE);
+			if(entries.getInt(0) != GameArchive.MAGIC || entries.getInt(4) != GameArchive.VERSION) {
+				throw new IOException("not a game archive of version " + GameArchive.VERSION);
+			}
+			byte[] rules = GameArchive.readRules(data);
+			ruleSet = GameArchive.ruleSetOf(rules);
+			byScores = new long[size];
+			byPieces = new long[size];
+			List<Long> starts = new ArrayList<>();
+			List<MappedByteBuffer> maps = new ArrayList<>();
+			long start = GameArchive.dataStart(rules), end = start;
+			for(int i = 0; i < size; i++) {
+				long offset = offset(i), recordEnd = offset + length(i);
+				if(offset != end || recordEnd > data.size()) {
+					throw new IOException("bad index entry of game " + i);
+				}
+				if(recordEnd - start > MAX_SEGMENT) {
+					starts.add(start);
+					maps.add(data.map(MapMode.READ_ONLY, start, end - start));
+					start = end;
+				}
+				end = recordEnd;
+				byScores[i] = (long) getScores(i) << 32 | i;
+				byPieces[i] = (long) getPieces(i) << 32 | i;
+			}
+			starts.add(start);
+			maps.add(data.map(MapMode.READ_ONLY, start, end - start));
+			segments = maps.toArray(new MappedByteBuffer[maps.size()]);
+			segmentStarts = new long[starts.size()];
+			for(int i = 0; i < segmentStarts.length; i++) {
+				segmentStarts[i] = starts.get(i);
+			}
+			Arrays.sort(byScores);
+			Arrays.sort(byPieces);
+		} catch(IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+	/**
+	 * number of games in archive
+	 */
+	public int size() { return size; }
+	/**
+	 * GETTER: ruleSet
+	 */
+	public RuleSet getRuleSet() { return ruleSet; }
+	/**
+	 * GETTER: fields of a game, those in index do not touch data file
+	 */
+	public int getScores(int gameId) { return entries.getInt(entry(gameId) + 16); }
+	public int getPieces(int gameId) { return entries.getInt(entry(gameId) + 20); }
+	public int getLines(int gameId) { return entries.getInt(entry(gameId) + 24); }
+	public long getSeed(int gameId) { return record(gameId).getLong(16); }
+	public int getWidth(int gameId) { return record(gameId).getShort(36); }
+	public int getHeight(int gameId) { return record(gameId).getShort(38); }
+	private long offset(int gameId) { return entries.getLong(entry(gameId) + 8); }
+	private int length(int gameId) { return entries.getInt(entry(gameId) + 28); }
+	private int entry(int gameId) {
+		if(gameId < 0 || gameId >= size) {
+			throw new IndexOutOfBoundsException("no game " + gameId + " in archive of " + size);
+		}
+		return GameArchive.HEADER_SIZE + gameId * GameArchive.ENTRY_SIZE;
+	}
+	/**
+	 * read-only slice of the mapped record of a game, no bytes are copied
+	 */
+	private ByteBuffer record(int gameId) {
+		long offset = offset(gameId);
+		int segment = Arrays.binarySearch(segmentStarts, offset);
+		if(segment < 0) {
+			segment = -segment - 2;
+		}
+		ByteBuffer record = segments[segment].duplicate();
+		int position = (int) (offset - segmentStarts[segment]);
+		record.limit(position + length(gameId)).position(position);
+		return record.slice();
+	}
+	/**
+	 * placements of the shapes of a game in order, see GameArchive.placement
+	 */
+	public ShortBuffer placements(int gameId) {
+		ByteBuffer record = record(gameId);
+		record.limit(GameArchive.RECORD_HEADER_SIZE + 2 * getPieces(gameId)).position(GameArchive.RECORD_HEADER_SIZE);
+		return record.slice().asShortBuffer().asReadOnlyBuffer();
+	}
+	/**
+	 * decode the final board of a game into a board of the same size
+	 */
+	public void boardInto(int gameId, BitBoard board) {
+		ByteBuffer record = record(gameId);
+		int width = record.getShort(36), height = record.getShort(38);
+		if(board.getWidth() != width || board.getHeight() != height) {
+			throw new IllegalArgumentException("board is " + board.getWidth() + "x" + board.getHeight()
+					+ ", game " + gameId + " is " + width + "x" + height);
+		}
+		board.clear();
+		int base = GameArchive.RECORD_HEADER_SIZE + 2 * getPieces(gameId);
+		for(int cell = 0; cell < width * height; cell++) {
+			int packed = record.get(base + (cell >> 1));
+			int nibble = (cell & 1) == 0 ? packed >> 4 & 0xF : packed & 0xF;
+			if(nibble == GameArchive.GARBAGE_CELL) {
+				board.fillGarbage(cell / width, cell % width);
+			} else if(nibble != 0) {
+				board.fill(cell / width, cell % width, TYPES[nibble - 1]);
+			}
+		}
+	}
+	/**
+	 * ids of games with minScores <= scores <= maxScores, best first
+	 */
+	public int[] withScores(int minScores, int maxScores) {
+		return range(byScores, minScores, maxScores);
+	}
+	/**
+	 * ids of games with minPieces <= pieces <= maxPieces, longest first
+	 */
+	public int[] withPieces(int minPieces, int maxPieces) {
+		return range(byPieces, minPieces, maxPieces);
+	}
+	private static int[] range(long[] sorted, int min, int max) {
+		if(min > max) {
+			return new int[0];
+		}
+		int from = lowerBound(sorted, (long) min << 32);
+		int to = max == Integer.MAX_VALUE ? sorted.length : lowerBound(sorted, (long) (max + 1) << 32);
+		int[] ids = new int[to - from];
+		for(int i = 0; i < ids.length; i++) {
+			ids[i] = (int) sorted[to - 1 - i];
+		}
+		return ids;
+	}
+	private static int lowerBound(long[] sorted, long key) {
+		int low = 0, high = sorted.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(sorted[mid] < key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+	@Override
+	public void close() throws IOException {
+		try {
+			data.close();
+		} finally {
+			index.close();
+		}
+	}
+	/**
+	 * verify games by replaying their placements by the rules of the archive: ArchiveReader base [minScores]
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1) {
+			System.err.println("usage: ArchiveReader base [minScores]");
+			System.exit(2);
+		}
+		int minScores = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+		try(ArchiveReader reader = new ArchiveReader(new File(args[0]))) {
+			int[] ids = reader.withScores(minScores, Integer.MAX_VALUE);
+			System.out.println(reader.size() + " games, " + ids.length + " with scores >= " + minScores);
+			int failed = 0;
+			RuleSet ruleSet = reader.getRuleSet();
+			for(int gameId : ids) {
+				ArchivePolicy policy = new ArchivePolicy(reader.placements(gameId));
+				GameModel gameModel = new GameModel(ruleSet, reader.getSeed(gameId));
+				GameStats stats = new BatchRunner(ruleSet, Math.max(reader.getPieces(gameId), 1)).play(gameModel, policy);
+				BitBoard archived = new BitBoard(ruleSet.getWidth(), ruleSet.getHeight());
+				reader.boardInto(gameId, archived);
+				boolean verified = policy.getMismatch() < 0 && stats.getScores() == reader.getScores(gameId)
+						&& stats.getLines() == reader.getLines(gameId) && stats.getPieces() == reader.getPieces(gameId)
+						&& sameCells(archived, gameModel);
+				if(!verified) {
+					++failed;
+					System.out.println("game " + gameId + ": archived " + reader.getScores(gameId) + " scores, replayed "
+							+ stats.getScores() + (policy.getMismatch() < 0 ? "" : ", diverged at piece " + policy.getMismatch()));
+				}
+			}
+			System.out.println(ids.length - failed + " verified, " + failed + " failed");
+			if(failed > 0) {
+				System.exit(1);
+			}
+		}
+	}
+	private static boolean sameCells(BitBoard archived, GameModel gameModel) {
+		for(int row = 0; row < archived.getHeight(); row++) {
+			for(int col = 0; col < archived.getWidth(); col++) {
+				if(archived.getType(row, col) != gameModel.getBoard().getType(row, col)
+						|| archived.isGarbage(row, col) != gameModel.getBoard().isGarbage(row, col)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,48 @@
+package com.inspur.cedric.tetris.archive;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.inspur.cedric.tetris.GameModel;
+import com.inspur.cedric.tetris.GameModel.Action;
+import com.inspur.cedric.tetris.GameShape;
+
+/**
+ * collects the placement of every packed shape of one model at a time,
+ * the game is appended to the archive when it is finished
+ */
+public class ArchiveRecorder implements GameModel.Observer {
+	private final ArchiveWriter writer;
+	private short[] placements;
+	private int pieces;
+	/**
+	 * constructor
+	 */
+	public ArchiveRecorder(ArchiveWriter writer) {
+		this.writer = writer;
+		placements = new short[256];
+	}
+	@Override
+	public void action(GameModel gameModel, Action action) {
+		if(action == Action.RESET) {
+			pieces = 0;
+		}
+	}
+	@Override
+	public void packed(GameModel gameModel, GameShape shape) {
+		if(pieces == placements.length) {
+			placements = Arrays.copyOf(placements, pieces * 2);
+		}
+		placements[pieces++] = GameArchive.placement(shape.getShapeType().ordinal(), shape.getOrientation(), shape.getCol());
+	}
+	/**
+	 * append the game of the model to the archive and start over, returns its game id
+	 */
+	public int finish(GameModel gameModel) throws IOException {
+		try {
+			return writer.append(gameModel, placements, pieces);
+		} finally {
+			pieces = 0;
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package com.inspur.cedric.tetris.archive;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.inspur.cedric.tetris.Board;
+import com.inspur.cedric.tetris.GameModel;
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+import com.inspur.cedric.tetris.RuleSet;
+import com.inspur.cedric.tetris.ai.AIPlayer;
+import com.inspur.cedric.tetris.sim.BatchRunner;
+
+/**
+ * appends finished games to an archive; append is synchronized, so games
+ * played on many threads can share one writer; all games of an archive are played by the same rules
+ */
+public class ArchiveWriter implements Closeable {
+	private final FileChannel data;
+	private final FileChannel index;
+	// indicates id of next game, i.e. number of entries in index
+	private int nextGameId;
+	// indicates reusable buffer of one index entry
+	private final ByteBuffer entry;
+	/**
+	 * constructor, creates the archive with the rules if it does not exist,
+	 * IOException is thrown if it exists with other rules
+	 */
+	public ArchiveWriter(File base, RuleSet ruleSet) throws IOException {
+		data = FileChannel.open(GameArchive.dataFile(base).toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		index = FileChannel.open(GameArchive.indexFile(base).toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		entry = ByteBuffer.allocate(GameArchive.ENTRY_SIZE);
+		try {
+			nextGameId = open(ruleSet);
+		} catch(IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+	// checks or writes the headers and drops what a crash left behind, returns number of games
+	private int open(RuleSet ruleSet) throws IOException {
+		if(data.size() == 0) {
+			GameArchive.writeRules(data, ruleSet);
+		}
+		byte[] rules = GameArchive.readRules(data);
+		if(!Arrays.equals(rules, ruleSet.toBytes())) {
+			throw new IOException("archive holds games of other " + GameArchive.ruleSetOf(rules));
+		}
+		prepare(index);
+		// a record without its index entry, e.g. after a crash, is dropped
+		long entries = (index.size() - GameArchive.HEADER_SIZE) / GameArchive.ENTRY_SIZE;
+		index.truncate(GameArchive.HEADER_SIZE + entries * GameArchive.ENTRY_SIZE);
+		long end = GameArchive.dataStart(rules);
+		if(entries > 0) {
+			ByteBuffer last = ByteBuffer.allocate(GameArchive.ENTRY_SIZE);
+			index.read(last, GameArchive.HEADER_SIZE + (entries - 1) * GameArchive.ENTRY_SIZE);
+			end = last.getLong(8) + last.getInt(28);
+		}
+		data.truncate(end);
+		if(entries > Integer.MAX_VALUE) {
+			throw new IOException("too many games in archive: " + entries);
+		}
+		return (int) entries;
+	}
+	private static void prepare(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(GameArchive.HEADER_SIZE);
+		if(channel.size() == 0) {
+			header.putInt(GameArchive.MAGIC).putInt(GameArchive.VERSION).flip();
+			channel.write(header, 0);
+		} else {
+			channel.read(header, 0);
+			if(header.getInt(0) != GameArchive.MAGIC || header.getInt(4) != GameArchive.VERSION) {
+				throw new IOException("not a game archive of version " + GameArchive.VERSION);
+			}
+		}
+	}
+	/**
+	 * append a finished game with the placement of each of its shapes, returns its game id
+	 */
+	public synchronized int append(GameModel gameModel, short[] placements, int pieces) throws IOException {
+		Board board = gameModel.getBoard();
+		int width = board.getWidth(), height = board.getHeight();
+		int length = GameArchive.RECORD_HEADER_SIZE + 2 * pieces + GameArchive.boardBytes(width, height);
+		int gameId = nextGameId;
+		ByteBuffer record = ByteBuffer.allocate(length);
+		record.putInt(GameArchive.MAGIC).putInt(length).putLong(gameId).putLong(gameModel.getSeed())
+				.putInt(gameModel.getTotalScores()).putInt(gameModel.getTotalLines()).putInt(pieces)
+				.putShort((short) width).putShort((short) height);
+		for(int i = 0; i < pieces; i++) {
+			record.putShort(placements[i]);
+		}
+		// two cells per byte, high nibble first, 0 for empty, ordinal+1 of shape type or GARBAGE_CELL
+		int cell = 0;
+		byte packed = 0;
+		for(int row = 0; row < height; row++) {
+			for(int col = 0; col < width; col++, cell++) {
+				ShapeType shapeType = board.getType(row, col);
+				int nibble = board.isGarbage(row, col) ? GameArchive.GARBAGE_CELL : shapeType == null ? 0 : shapeType.ordinal() + 1;
+				if((cell & 1) == 0) {
+					packed = (byte) (nibble << 4);
+				} else {
+					record.put((byte) (packed | nibble));
+				}
+			}
+		}
+		if((cell & 1) == 1) {
+			record.put(packed);
+		}
+		record.flip();
+		long offset = data.size();
+		while(record.hasRemaining()) {
+			data.write(record, offset + record.position());
+		}
+		entry.clear();
+		entry.putLong(gameId).putLong(offset).putInt(gameModel.getTotalScores()).putInt(pieces)
+				.putInt(gameModel.getTotalLines()).putInt(length).flip();
+		while(entry.hasRemaining()) {
+			index.write(entry, GameArchive.HEADER_SIZE + (long) gameId * GameArchive.ENTRY_SIZE + entry.position());
+		}
+		++nextGameId;
+		return gameId;
+	}
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			data.force(false);
+			index.force(false);
+		} finally {
+			data.close();
+			index.close();
+		}
+	}
+	/**
+	 * archive games of the AI player: ArchiveWriter base [games] [firstSeed] [maxPieces],
+	 * rules are changed by system properties, see RuleSet.fromProperties
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1) {
+			System.err.println("usage: ArchiveWriter base [games] [firstSeed] [maxPieces]");
+			System.exit(2);
+		}
+		int games = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		long firstSeed = args.length > 2 ? Long.parseLong(args[2]) : 0L;
+		int maxPieces = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+		RuleSet ruleSet = RuleSet.fromProperties(System.getProperties());
+		BatchRunner runner = new BatchRunner(ruleSet, maxPieces);
+		AIPlayer player = new AIPlayer();
+		try(ArchiveWriter writer = new ArchiveWriter(new File(args[0]), ruleSet)) {
+			ArchiveRecorder recorder = new ArchiveRecorder(writer);
+			for(long seed : BatchRunner.seeds(firstSeed, games)) {
+				GameModel gameModel = new GameModel(ruleSet, seed);
+				gameModel.setObserver(recorder);
+				runner.play(gameModel, player);
+				recorder.finish(gameModel);
+			}
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.inspur.cedric.tetris.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.inspur.cedric.tetris.RuleSet;
+
+/**
+ * append-only archive of finished games, kept in two files:
+ * <pre>
+ * name.dat  header, int length and bytes of RuleSet.toBytes, then one record per game:
+ *           int MAGIC, int length, long gameId, long seed, int scores, int lines, int pieces,
+ *           short width, short height, short placement * pieces, board as 4-bit cells (see GARBAGE_CELL)
+ * name.idx  header, then one fixed-size entry per game:
+ *           long gameId, long offset, int scores, int pieces, int lines, int length
+ * </pre>
+ * a game id is the position of its entry in the index, so lookup by id is a single
+ * multiplication and queries by score or length only read the index; every game of an archive
+ * is played by the rules in its header
+ */
+public final class GameArchive {
+	public static final int MAGIC = 'T' << 24 | 'G' << 16 | 'A' << 8 | 1;
+	// indicates size of header of both files: magic and version
+	public static final int HEADER_SIZE = 8;
+	// version 2: shapes come from the piece generators, seeds of version 1 give other shapes;
+	// version 3: rules in header of data file
+	public static final int VERSION = 3;
+	// indicates longest rules in a header, a table of RuleSet.MAX_LEVELS levels fits
+	public static final int MAX_RULES = 4096;
+	public static final int ENTRY_SIZE = 32;
+	// indicates 4-bit cell of garbage, after 0 for empty and ordinal+1 of each shape type
+	public static final int GARBAGE_CELL = 8;
+	// indicates size of record fields before placements
+	public static final int RECORD_HEADER_SIZE = 40;
+	/**
+	 * constructor
+	 */
+	private GameArchive() {
+	}
+	public static File dataFile(File base) {
+		return new File(base.getPath() + ".dat");
+	}
+	public static File indexFile(File base) {
+		return new File(base.getPath() + ".idx");
+	}
+	/**
+	 * placement of a shape in two bytes: type (3 bits), orientation (2 bits), column (6 bits)
+	 */
+	public static short placement(int type, int orientation, int col) {
+		return (short) (type << 8 | orientation << 6 | col);
+	}
+	public static int typeOf(short placement) {
+		return placement >> 8 & 0x7;
+	}
+	public static int orientationOf(short placement) {
+		return placement >> 6 & 0x3;
+	}
+	public static int colOf(short placement) {
+		return placement & 0x3F;
+	}
+	/**
+	 * write the header of an empty data file
+	 */
+	public static void writeRules(FileChannel data, RuleSet ruleSet) throws IOException {
+		byte[] rules = ruleSet.toBytes();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 4 + rules.length);
+		header.putInt(MAGIC).putInt(VERSION).putInt(rules.length).put(rules).flip();
+		while(header.hasRemaining()) {
+			data.write(header, header.position());
+		}
+	}
+	/**
+	 * bytes of the rules in the header of a data file, IOException is thrown if it is not an archive
+	 */
+	public static byte[] readRules(FileChannel data) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 4);
+		if(data.read(header, 0) < header.capacity() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+			throw new IOException("not a game archive of version " + VERSION);
+		}
+		int length = header.getInt(HEADER_SIZE);
+		if(length < 0 || length > MAX_RULES) {
+			throw new IOException("bad length of rules: " + length);
+		}
+		ByteBuffer rules = ByteBuffer.allocate(length);
+		if(data.read(rules, header.capacity()) < length) {
+			throw new IOException("archive ends in the middle of rules");
+		}
+		return rules.array();
+	}
+	/**
+	 * rules read back from readRules
+	 */
+	public static RuleSet ruleSetOf(byte[] rules) throws IOException {
+		try {
+			return RuleSet.fromBytes(ByteBuffer.wrap(rules));
+		} catch(IllegalArgumentException e) {
+			throw new IOException("bad rules: " + e.getMessage(), e);
+		}
+	}
+	/**
+	 * offset of the first record of a data file
+	 */
+	public static long dataStart(byte[] rules) {
+		return HEADER_SIZE + 4 + rules.length;
+	}
+	public static int boardBytes(int width, int height) {
+		return (width * height + 1) / 2;
+	}
+}
@@ -0,0 +1,97 @@
+package com.inspur.cedric.tetris.bench;
+
+/**
+ * minimal benchmark harness: warms a task up, then measures it for a fixed number of
+ * timed iterations and reports operations per second
+ */
+public class Bench {
+	// results of every task are folded into sink so that the JIT cannot drop the work
+	private static volatile long sink;
+	private final int warmupIterations;
+	private final int measureIterations;
+	// indicates how long each iteration runs
+	private final long iterationNanos;
+	/**
+	 * constructor
+	 */
+	public Bench(int warmupIterations, int measureIterations, long iterationMillis) {
+		this.warmupIterations = warmupIterations;
+		this.measureIterations = measureIterations;
+		this.iterationNanos = iterationMillis * 1000000L;
+	}
+	/**
+	 * measure the task and print one line of result
+	 */
+	public Result run(String name, Task task) {
+		for(int i = 0; i < warmupIterations; i++) {
+			iteration(task);
+		}
+		double[] rates = new double[measureIterations];
+		for(int i = 0; i < measureIterations; i++) {
+			rates[i] = iteration(task);
+		}
+		Result result = new Result(name, rates);
+		System.out.println(result);
+		return result;
+	}
+	// operations per second of one iteration
+	private double iteration(Task task) {
+		long ops = 0, accumulator = 0;
+		long start = System.nanoTime(), elapsed;
+		do {
+			for(int i = 0; i < 64; i++) {
+				accumulator += task.run();
+			}
+			ops += 64;
+			elapsed = System.nanoTime() - start;
+		} while(elapsed < iterationNanos);
+		sink += accumulator;
+		return ops * 1e9 / elapsed;
+	}
+	/**********************************************************/
+	public interface Task {
+		/**
+		 * one operation, returns anything derived from its work
+		 */
+		long run();
+	}
+	/**********************************************************/
+	public static class Result {
+		private final String name;
+		// indicates operations per second of each measured iteration
+		private final double[] rates;
+		/**
+		 * constructor
+		 */
+		private Result(String name, double[] rates) {
+			this.name = name;
+			this.rates = rates;
+		}
+		/**
+		 * GETTER: name, mean, error
+		 */
+		public String getName() { return name; }
+		public double getMean() {
+			double sum = 0;
+			for(double rate : rates) {
+				sum += rate;
+			}
+			return sum / rates.length;
+		}
+		// standard deviation between iterations
+		public double getError() {
+			double mean = getMean(), sum = 0;
+			for(double rate : rates) {
+				sum += (rate - mean) * (rate - mean);
+			}
+			return rates.length < 2 ? 0 : Math.sqrt(sum / (rates.length - 1));
+		}
+		/**
+		 * toString override
+		 */
+		@Override
+		public String toString() {
+			return String.format("%-24s %16.1f +- %12.1f ops/s", name, getMean(), getError());
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package com.inspur.cedric.tetris.bench;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import com.inspur.cedric.tetris.BitBoard;
+import com.inspur.cedric.tetris.GameModel;
+import com.inspur.cedric.tetris.GameModel.GameState;
+import com.inspur.cedric.tetris.GameShape;
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+import com.inspur.cedric.tetris.GameSnapshot;
+import com.inspur.cedric.tetris.GameView;
+import com.inspur.cedric.tetris.RuleSet;
+import com.inspur.cedric.tetris.RuleSet.Randomizer;
+import com.inspur.cedric.tetris.ai.AIPlayer;
+import com.inspur.cedric.tetris.ai.EvaluationCache;
+import com.inspur.cedric.tetris.ai.MoveSearch;
+import com.inspur.cedric.tetris.ai.WeightedEvaluator;
+import com.inspur.cedric.tetris.random.BagGenerator;
+import com.inspur.cedric.tetris.random.PieceGenerator;
+import com.inspur.cedric.tetris.random.SplitMix64;
+import com.inspur.cedric.tetris.sim.BatchRunner;
+import com.inspur.cedric.tetris.sim.RandomPolicy;
+
+/**
+ * benchmarks of model hot paths, every input is generated from SEED so runs are comparable:
+ * ModelBenchmarks [iterationMillis] [filter]
+ */
+public class ModelBenchmarks {
+	private static final long SEED = 42L;
+	private static final int WIDTH = RuleSet.CLASSIC.getWidth();
+	private static final int HEIGHT = RuleSet.CLASSIC.getHeight();
+	// indicates board widths of scaling benchmark, each board is twice as high as wide
+	private static final int[] SCALING_WIDTHS = { 10, 20, 40, 64 };
+	// indicates how many precomputed positions collision and drop benchmarks cycle through
+	private static final int POSITIONS = 1024;
+	private static final ShapeType[] TYPES = ShapeType.values();
+	/**
+	 * benchmark entrance
+	 */
+	public static void main(String[] args) {
+		long iterationMillis = args.length > 0 ? Long.parseLong(args[0]) : 1000L;
+		String filter = args.length > 1 ? args[1] : "";
+		Bench bench = new Bench(3, 5, iterationMillis);
+		final BitBoard dense = denseBoard(new Random(SEED), 14, false);
+		final BitBoard cleared = denseBoard(new Random(SEED), 14, true);
+		final BitBoard scratch = new BitBoard(WIDTH, HEIGHT);
+		final int[][] positions = positions(dense, new Random(SEED));
+		if("collision".contains(filter)) {
+			bench.run("collision", new Bench.Task() {
+				private int i;
+				@Override
+				public long run() {
+					int[] p = positions[i++ & (POSITIONS-1)];
+					return dense.fits(TYPES[p[0]], p[1], p[2], p[3]) ? 1 : 0;
+				}
+			});
+		}
+		if("hardDrop".contains(filter)) {
+			bench.run("hardDrop", new Bench.Task() {
+				private int i;
+				@Override
+				public long run() {
+					int[] p = positions[i++ & (POSITIONS-1)];
+					return dense.dropDistance(TYPES[p[0]], p[1], p[2], p[3]);
+				}
+			});
+		}
+		if("copyBoard".contains(filter)) {
+			bench.run("copyBoard", new Bench.Task() {
+				@Override
+				public long run() {
+					scratch.copyFrom(cleared);
+					return scratch.getRowMask(HEIGHT-1);
+				}
+			});
+		}
+		if("lineClear".contains(filter)) {
+			// includes copyBoard, which restores the four full lines each time
+			bench.run("lineClear", new Bench.Task() {
+				@Override
+				public long run() {
+					scratch.copyFrom(cleared);
+					return scratch.clearFullLines(HEIGHT-4, HEIGHT-1);
+				}
+			});
+		}
+		if("rotate".contains(filter)) {
+			final GameModel gameModel = new GameModel(SEED);
+			for(int i = 0; i < 5; i++) {
+				gameModel.moveDown();
+			}
+			bench.run("rotate", new Bench.Task() {
+				@Override
+				public long run() {
+					gameModel.rotate();
+					return gameModel.getCurrentShape().getOrientation();
+				}
+			});
+		}
+		if("snapshotRestore".contains(filter)) {
+			final GameModel gameModel = new GameModel(SEED);
+			gameModel.setGameState(GameState.RUNNING);
+			AIPlayer aiPlayer = new AIPlayer(new MoveSearch(new WeightedEvaluator(), false));
+			for(int i = 0; i < 30; i++) {
+				aiPlayer.play(gameModel);
+			}
+			final GameSnapshot snapshot = gameModel.snapshot();
+			// one move and its undo, as a search would do
+			bench.run("snapshotRestore", new Bench.Task() {
+				@Override
+				public long run() {
+					gameModel.moveDownToBottom();
+					gameModel.restore(snapshot);
+					return gameModel.snapshot().getTotalPieces();
+				}
+			});
+		}
+		if("spawn".contains(filter)) {
+			final GameShape gameShape = new GameShape(ShapeType.O);
+			final PieceGenerator generator = new BagGenerator(new SplitMix64(SEED));
+			bench.run("spawn", new Bench.Task() {
+				@Override
+				public long run() {
+					gameShape.respawn(generator.next(), 0);
+					return gameShape.getCol();
+				}
+			});
+		}
+		if("generator".contains(filter)) {
+			for(Randomizer randomizer : Randomizer.values()) {
+				final PieceGenerator generator = randomizer.create(new SplitMix64(SEED));
+				// precomputes a queue of shapes at once
+				final ShapeType[] queue = new ShapeType[64];
+				bench.run("generator(" + randomizer + ", 64 shapes)", new Bench.Task() {
+					@Override
+					public long run() {
+						generator.next(queue, 0, queue.length);
+						return queue[queue.length-1].ordinal();
+					}
+				});
+			}
+		}
+		if("gameRandomPolicy".contains(filter)) {
+			final BatchRunner batchRunner = new BatchRunner(1000);
+			final RandomPolicy policy = new RandomPolicy();
+			bench.run("gameRandomPolicy", new Bench.Task() {
+				private long seed = SEED;
+				@Override
+				public long run() {
+					return batchRunner.play(seed++ & 1023, policy).getPieces();
+				}
+			});
+		}
+		if("gameAI".contains(filter)) {
+			final BatchRunner batchRunner = new BatchRunner(100);
+			final AIPlayer aiPlayer = new AIPlayer(new MoveSearch(new WeightedEvaluator(), false));
+			bench.run("gameAI(100 pieces)", new Bench.Task() {
+				private long seed = SEED;
+				@Override
+				public long run() {
+					return batchRunner.play(seed++ & 1023, aiPlayer).getPieces();
+				}
+			});
+		}
+		if("lookahead".contains(filter)) {
+			// search of two shapes, without and with the cache of board scores
+			for(final boolean cached : new boolean[] { false, true }) {
+				final BatchRunner batchRunner = new BatchRunner(100);
+				final AIPlayer aiPlayer = new AIPlayer(new MoveSearch(new WeightedEvaluator(), true,
+						cached ? new EvaluationCache(1 << 15) : null));
+				bench.run("lookahead(" + (cached ? "cached" : "uncached") + ", 100 pieces)", new Bench.Task() {
+					private long seed = SEED;
+					@Override
+					public long run() {
+						return batchRunner.play(seed++ & 1023, aiPlayer).getPieces();
+					}
+				});
+			}
+		}
+		if("boardSize".contains(filter)) {
+			for(int width : SCALING_WIDTHS) {
+				final BatchRunner batchRunner = new BatchRunner(RuleSet.CLASSIC.withSize(width, width * 2), 100);
+				final AIPlayer aiPlayer = new AIPlayer(new MoveSearch(new WeightedEvaluator(), false));
+				bench.run("boardSize(" + width + "x" + width * 2 + ", 100 pieces)", new Bench.Task() {
+					private long seed = SEED;
+					@Override
+					public long run() {
+						return batchRunner.play(seed++ & 1023, aiPlayer).getPieces();
+					}
+				});
+			}
+		}
+		if("paint".contains(filter) || "paintLayer".contains(filter)) {
+			final GameModel gameModel = new GameModel(SEED);
+			gameModel.setGameState(GameState.RUNNING);
+			AIPlayer aiPlayer = new AIPlayer(new MoveSearch(new WeightedEvaluator(), false));
+			for(int i = 0; i < 30; i++) {
+				aiPlayer.play(gameModel);
+			}
+			final GameSnapshot[] snapshots = { gameModel.snapshot(), null };
+			aiPlayer.play(gameModel);
+			snapshots[1] = gameModel.snapshot();
+			final GameView gameView = new GameView(RuleSet.CLASSIC, snapshots[0]);
+			final BufferedImage image = new BufferedImage(gameView.getPreferredSize().width, gameView.getPreferredSize().height,
+					BufferedImage.TYPE_INT_RGB);
+			// steady state: only current shape moved, cached layer is reused
+			bench.run("paint", new Bench.Task() {
+				@Override
+				public long run() {
+					Graphics2D graphics = image.createGraphics();
+					gameView.paint(graphics);
+					graphics.dispose();
+					return image.getRGB(0, 0);
+				}
+			});
+			// board changes on every frame, cached layer is redrawn each time
+			bench.run("paintLayer", new Bench.Task() {
+				private int i;
+				@Override
+				public long run() {
+					gameView.publish(snapshots[i++ & 1]);
+					Graphics2D graphics = image.createGraphics();
+					gameView.paint(graphics);
+					graphics.dispose();
+					return image.getRGB(0, 0);
+				}
+			});
+		}
+	}
+	/**
+	 * board whose bottom rows are filled randomly with one gap per row,
+	 * optionally the bottom four rows are full
+	 */
+	private static BitBoard denseBoard(Random random, int rows, boolean fullBottom) {
+		BitBoard board = new BitBoard(WIDTH, HEIGHT);
+		for(int row = HEIGHT - rows; row < HEIGHT; row++) {
+			int gap = fullBottom && row >= HEIGHT - 4 ? -1 : random.nextInt(WIDTH);
+			for(int col = 0; col < WIDTH; col++) {
+				if(col != gap && (row > HEIGHT - rows + 2 || random.nextBoolean())) {
+					board.fill(row, col, TYPES[random.nextInt(TYPES.length)]);
+				}
+			}
+		}
+		return board;
+	}
+	// {type, orientation, row, col} of shapes that fit the board
+	private static int[][] positions(BitBoard board, Random random) {
+		int[][] positions = new int[POSITIONS][];
+		for(int i = 0; i < POSITIONS; ) {
+			int type = random.nextInt(TYPES.length), orientation = random.nextInt(4);
+			int row = random.nextInt(HEIGHT / 2), col = random.nextInt(WIDTH);
+			if(board.fits(TYPES[type], orientation, row, col)) {
+				positions[i++] = new int[] { type, orientation, row, col };
+			}
+		}
+		return positions;
+	}
+}
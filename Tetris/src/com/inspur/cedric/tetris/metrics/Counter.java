@@ -0,0 +1,34 @@
+package com.inspur.cedric.tetris.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * count of events, cheap to increment from any number of threads
+ */
+public class Counter {
+	private final String name;
+	private final LongAdder adder;
+	/**
+	 * constructor
+	 */
+	public Counter(String name) {
+		this.name = name;
+		adder = new LongAdder();
+	}
+	/**
+	 * GETTER: name
+	 */
+	public String getName() { return name; }
+	public void increment() {
+		adder.increment();
+	}
+	public void add(long value) {
+		adder.add(value);
+	}
+	public long sum() {
+		return adder.sum();
+	}
+	public void reset() {
+		adder.reset();
+	}
+}
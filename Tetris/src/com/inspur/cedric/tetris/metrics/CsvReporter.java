@@ -0,0 +1,80 @@
+package com.inspur.cedric.tetris.metrics;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * writes one CSV line of metrics per period from a daemon thread: pieces and lines per second,
+ * then count, median, 99th percentile and max of each histogram, all over the period only
+ */
+class CsvReporter implements Runnable {
+	private final PrintStream out;
+	// indicates state at the last report, the next one shows what happened since
+	private final Histogram.Snapshot[] last;
+	private long lastPieces;
+	private long lastLines;
+	private long lastNanos;
+	/**
+	 * constructor
+	 */
+	CsvReporter(PrintStream out) {
+		this.out = out;
+		last = new Histogram.Snapshot[Metrics.HISTOGRAMS.length];
+		for(int i = 0; i < last.length; i++) {
+			last[i] = Metrics.HISTOGRAMS[i].snapshot();
+		}
+		lastPieces = Metrics.PIECES.sum();
+		lastLines = Metrics.LINES.sum();
+		lastNanos = System.nanoTime();
+	}
+	void start(long periodMillis) {
+		out.println(header());
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "metrics-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleAtFixedRate(this, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+		// last, partial period is written on exit
+		Runtime.getRuntime().addShutdownHook(new Thread(this::run, "metrics-flush"));
+	}
+	private String header() {
+		StringBuilder sBuilder = new StringBuilder("time,piecesPerSecond,linesPerSecond");
+		for(Histogram histogram : Metrics.HISTOGRAMS) {
+			String name = histogram.getName();
+			sBuilder.append(',').append(name).append("Count,").append(name).append("P50,")
+					.append(name).append("P99,").append(name).append("Max");
+		}
+		return sBuilder.toString();
+	}
+	/**
+	 * write one line, synchronized as the shutdown hook may run while a report is due
+	 */
+	@Override
+	public synchronized void run() {
+		long now = System.nanoTime();
+		long pieces = Metrics.PIECES.sum(), lines = Metrics.LINES.sum();
+		double seconds = Math.max(1, now - lastNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+		StringBuilder sBuilder = new StringBuilder();
+		sBuilder.append(System.currentTimeMillis()).append(',').append(String.format(Locale.ROOT, "%.1f", (pieces - lastPieces) / seconds))
+				.append(',').append(String.format(Locale.ROOT, "%.1f", (lines - lastLines) / seconds));
+		for(int i = 0; i < last.length; i++) {
+			Histogram.Snapshot snapshot = Metrics.HISTOGRAMS[i].snapshot();
+			Histogram.Snapshot period = snapshot.since(last[i]);
+			sBuilder.append(',').append(period.getCount()).append(',').append(period.getP50())
+					.append(',').append(period.getP99()).append(',').append(periodMax(period));
+			last[i] = snapshot;
+		}
+		out.println(sBuilder.toString());
+		lastPieces = pieces;
+		lastLines = lines;
+		lastNanos = now;
+	}
+	// max of the period is estimated from its highest bucket, the exact max is kept for all time only
+	private static long periodMax(Histogram.Snapshot period) {
+		return period.getCount() == 0 ? 0 : period.percentile(1);
+	}
+}
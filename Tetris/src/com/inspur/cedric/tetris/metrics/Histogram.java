@@ -0,0 +1,140 @@
+package com.inspur.cedric.tetris.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HDR-style histogram of non-negative values, e.g. nanoseconds: values below 32 have a bucket
+ * each, above that every power of two is split into 16 buckets, so any value is reported within
+ * about 6% and recording is a few shifts and one atomic increment, with no allocation
+ */
+public class Histogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int HALF = SUB_BUCKETS >> 1;
+	// indicates number of buckets needed up to Long.MAX_VALUE
+	static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * HALF;
+	private final String name;
+	private final AtomicLongArray counts;
+	private final LongAdder sum;
+	private final AtomicLong max;
+	/**
+	 * constructor
+	 */
+	public Histogram(String name) {
+		this.name = name;
+		counts = new AtomicLongArray(BUCKETS);
+		sum = new LongAdder();
+		max = new AtomicLong();
+	}
+	/**
+	 * GETTER: name
+	 */
+	public String getName() { return name; }
+	/**
+	 * record a value, negative values are recorded as 0
+	 */
+	public void record(long value) {
+		if(value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(indexOf(value));
+		sum.add(value);
+		long current = max.get();
+		while(value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+	/**
+	 * record time elapsed since start, which was taken from Metrics.now()
+	 */
+	public void recordSince(long start) {
+		record(System.nanoTime() - start);
+	}
+	static int indexOf(long value) {
+		if(value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return shift * HALF + (int) (value >>> shift);
+	}
+	// highest value that falls into the bucket
+	static long highestOf(int index) {
+		if(index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / HALF - 1;
+		long sub = index - shift * HALF;
+		return ((sub + 1) << shift) - 1;
+	}
+	/**
+	 * copy of counts so far, e.g. to compute percentiles or the difference to an earlier copy
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		long count = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+			count += copy[i];
+		}
+		return new Snapshot(copy, count, sum.sum(), max.get());
+	}
+	public void reset() {
+		for(int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		sum.reset();
+		max.set(0);
+	}
+	/**********************************************************/
+	public static class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		// indicates max since histogram was created or reset, not only of this snapshot
+		private final long max;
+		/**
+		 * constructor
+		 */
+		Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+		/**
+		 * GETTER: count, max, mean, percentiles; getters are what JMX shows of a snapshot
+		 */
+		public long getCount() { return count; }
+		public long getMax() { return max; }
+		public double getMean() { return count == 0 ? 0 : (double) sum / count; }
+		public long getP50() { return percentile(0.5); }
+		public long getP99() { return percentile(0.99); }
+		public long getP999() { return percentile(0.999); }
+		/**
+		 * value that the fraction (0 to 1) of values is at or below, 0 if nothing was recorded
+		 */
+		public long percentile(double fraction) {
+			long rank = Math.max(1, (long) Math.ceil(fraction * count));
+			long seen = 0;
+			for(int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if(seen >= rank) {
+					return Math.min(highestOf(i), max);
+				}
+			}
+			return 0;
+		}
+		/**
+		 * values recorded since an earlier snapshot of the same histogram
+		 */
+		public Snapshot since(Snapshot earlier) {
+			long[] delta = new long[counts.length];
+			for(int i = 0; i < counts.length; i++) {
+				delta[i] = counts[i] - earlier.counts[i];
+			}
+			return new Snapshot(delta, count - earlier.count, sum - earlier.sum, max);
+		}
+	}
+}
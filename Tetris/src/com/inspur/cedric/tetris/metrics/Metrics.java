@@ -0,0 +1,93 @@
+package com.inspur.cedric.tetris.metrics;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * counters and latency histograms of a running game, enabled by -Dtetris.metrics=true.
+ * ENABLED is a constant, so when it is false the JIT removes every instrumented block and
+ * disabled metrics cost nothing; times are in nanoseconds
+ */
+public final class Metrics {
+	public static final boolean ENABLED = Boolean.getBoolean("tetris.metrics");
+	// indicates name metrics are registered by in JMX
+	public static final String OBJECT_NAME = "com.inspur.cedric.tetris:type=Metrics";
+	// time of one game loop tick, from an input being posted to being applied, of moveDown,
+	// moveDownToBottom and eraseLine, of painting a frame, and from a snapshot being published to being painted
+	public static final Histogram TICK = new Histogram("tick");
+	public static final Histogram INPUT_LATENCY = new Histogram("input");
+	public static final Histogram MOVE_DOWN = new Histogram("moveDown");
+	public static final Histogram DROP = new Histogram("drop");
+	public static final Histogram ERASE_LINE = new Histogram("eraseLine");
+	public static final Histogram PAINT = new Histogram("paint");
+	public static final Histogram FRAME_LATENCY = new Histogram("frame");
+	static final Histogram[] HISTOGRAMS = { TICK, INPUT_LATENCY, MOVE_DOWN, DROP, ERASE_LINE, PAINT, FRAME_LATENCY };
+	// indicates shapes packed and lines erased, by every model
+	public static final Counter PIECES = new Counter("pieces");
+	public static final Counter LINES = new Counter("lines");
+	// indicates matches of net.GameServer ended by an error
+	public static final Counter BROKEN_MATCHES = new Counter("brokenMatches");
+	private static boolean started;
+	// indicates when metrics were last reset
+	private static volatile long resetNanos = System.nanoTime();
+	/**
+	 * constructor
+	 */
+	private Metrics() {
+	}
+	/**
+	 * current time if enabled, to be passed to Histogram.recordSince
+	 */
+	public static long now() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+	/**
+	 * register metrics in JMX and, if -Dtetris.metrics.csv=<file> is set ("-" is standard output),
+	 * dump them every -Dtetris.metrics.period seconds (10 by default) and once more on exit;
+	 * does nothing if metrics are disabled or already started
+	 */
+	public static synchronized void start() {
+		if(!ENABLED || started) {
+			return;
+		}
+		started = true;
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsBean(), new ObjectName(OBJECT_NAME));
+		} catch(JMException e) {
+			throw new RuntimeException("cannot register metrics as " + OBJECT_NAME, e);
+		}
+		String file = System.getProperty("tetris.metrics.csv");
+		if(file != null) {
+			PrintStream out;
+			try {
+				out = file.equals("-") ? System.out : new PrintStream(new FileOutputStream(file), true, "UTF-8");
+			} catch(FileNotFoundException | UnsupportedEncodingException e) {
+				throw new RuntimeException("cannot write metrics to " + file, e);
+			}
+			long period = TimeUnit.SECONDS.toMillis(Long.getLong("tetris.metrics.period", 10));
+			new CsvReporter(out).start(period);
+		}
+	}
+	/**
+	 * nanoseconds since metrics were last reset
+	 */
+	static long elapsedNanos() {
+		return System.nanoTime() - resetNanos;
+	}
+	static void reset() {
+		for(Histogram histogram : HISTOGRAMS) {
+			histogram.reset();
+		}
+		PIECES.reset();
+		LINES.reset();
+		BROKEN_MATCHES.reset();
+		resetNanos = System.nanoTime();
+	}
+}
@@ -0,0 +1,37 @@
+package com.inspur.cedric.tetris.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+class MetricsBean implements MetricsMXBean {
+	@Override
+	public Histogram.Snapshot getTick() { return Metrics.TICK.snapshot(); }
+	@Override
+	public Histogram.Snapshot getInputLatency() { return Metrics.INPUT_LATENCY.snapshot(); }
+	@Override
+	public Histogram.Snapshot getMoveDown() { return Metrics.MOVE_DOWN.snapshot(); }
+	@Override
+	public Histogram.Snapshot getDrop() { return Metrics.DROP.snapshot(); }
+	@Override
+	public Histogram.Snapshot getEraseLine() { return Metrics.ERASE_LINE.snapshot(); }
+	@Override
+	public Histogram.Snapshot getPaint() { return Metrics.PAINT.snapshot(); }
+	@Override
+	public Histogram.Snapshot getFrameLatency() { return Metrics.FRAME_LATENCY.snapshot(); }
+	@Override
+	public long getPieces() { return Metrics.PIECES.sum(); }
+	@Override
+	public long getLines() { return Metrics.LINES.sum(); }
+	@Override
+	public long getBrokenMatches() { return Metrics.BROKEN_MATCHES.sum(); }
+	@Override
+	public double getPiecesPerSecond() { return perSecond(Metrics.PIECES.sum()); }
+	@Override
+	public double getLinesPerSecond() { return perSecond(Metrics.LINES.sum()); }
+	@Override
+	public void reset() {
+		Metrics.reset();
+	}
+	private static double perSecond(long count) {
+		return count * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, Metrics.elapsedNanos());
+	}
+}
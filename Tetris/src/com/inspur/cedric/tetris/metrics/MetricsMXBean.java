@@ -0,0 +1,23 @@
+package com.inspur.cedric.tetris.metrics;
+
+/**
+ * metrics as shown in JMX, e.g. by jconsole; latencies are since the last reset, in nanoseconds
+ */
+public interface MetricsMXBean {
+	Histogram.Snapshot getTick();
+	Histogram.Snapshot getInputLatency();
+	Histogram.Snapshot getMoveDown();
+	Histogram.Snapshot getDrop();
+	Histogram.Snapshot getEraseLine();
+	Histogram.Snapshot getPaint();
+	Histogram.Snapshot getFrameLatency();
+	long getPieces();
+	long getLines();
+	long getBrokenMatches();
+	double getPiecesPerSecond();
+	double getLinesPerSecond();
+	/**
+	 * start counting again
+	 */
+	void reset();
+}
@@ -0,0 +1,41 @@
+package com.inspur.cedric.tetris.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * reads what BitWriter wrote
+ */
+class BitReader {
+	private ByteBuffer in;
+	private long bits;
+	private int count;
+	void reset(ByteBuffer in) {
+		this.in = in;
+		bits = 0;
+		count = 0;
+	}
+	/**
+	 * next n bits, n at most 32
+	 */
+	int read(int n) {
+		while(count < n) {
+			bits |= (in.get() & 0xffL) << count;
+			count += 8;
+		}
+		int value = (int) (bits & ((1L << n) - 1));
+		bits >>>= n;
+		count -= n;
+		return value;
+	}
+	// value written as n bits of a signed number
+	int readSigned(int n) {
+		return read(n) << (32 - n) >> (32 - n);
+	}
+	long readLong(int n) {
+		if(n > 32) {
+			long low = read(32) & 0xffffffffL;
+			return low | (long) read(n - 32) << 32;
+		}
+		return read(n) & 0xffffffffL;
+	}
+}
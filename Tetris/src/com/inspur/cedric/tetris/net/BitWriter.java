@@ -0,0 +1,48 @@
+package com.inspur.cedric.tetris.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * writes values of any number of bits into a buffer, lowest bit first, without padding between them
+ */
+class BitWriter {
+	private ByteBuffer out;
+	// bits not written to buffer yet, and how many
+	private long bits;
+	private int count;
+	void reset(ByteBuffer out) {
+		this.out = out;
+		bits = 0;
+		count = 0;
+	}
+	/**
+	 * lowest n bits of the value, n at most 32
+	 */
+	void write(int value, int n) {
+		bits |= (value & ((1L << n) - 1)) << count;
+		count += n;
+		while(count >= 8) {
+			out.put((byte) bits);
+			bits >>>= 8;
+			count -= 8;
+		}
+	}
+	void writeLong(long value, int n) {
+		if(n > 32) {
+			write((int) value, 32);
+			write((int) (value >>> 32), n - 32);
+		} else {
+			write((int) value, n);
+		}
+	}
+	/**
+	 * write the bits left, padded to a whole byte
+	 */
+	void flush() {
+		if(count > 0) {
+			out.put((byte) bits);
+		}
+		bits = 0;
+		count = 0;
+	}
+}
@@ -0,0 +1,123 @@
+package com.inspur.cedric.tetris.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * one client of GameServer: tick threads queue messages, the selector thread writes them
+ * and reads the inputs of the client
+ */
+class Connection {
+	// indicates most bytes waiting for a client before it is dropped as too slow
+	private static final long MAX_PENDING = 1 << 20;
+	// indicates most messages written by one gathering write
+	private static final int MAX_GATHER = 32;
+	private final SocketChannel channel;
+	private final SelectionKey key;
+	// messages waiting to be written, and the one written partly
+	private final Queue<ByteBuffer> outbox;
+	private final ByteBuffer[] gather;
+	private final AtomicLong pendingBytes;
+	// indicates whether connection is on the list of connections to flush
+	final AtomicBoolean dirty;
+	// indicates input buffer, touched by selector thread only
+	final ByteBuffer input;
+	// indicates player and match of this client, null while waiting for an opponent; written by selector thread
+	volatile Match.Player player;
+	private volatile boolean closed;
+	// indicates connection is closed by selector thread on its next flush, e.g. because it was too slow
+	private volatile boolean failed;
+	/**
+	 * constructor
+	 */
+	Connection(SocketChannel channel, SelectionKey key) {
+		this.channel = channel;
+		this.key = key;
+		outbox = new ConcurrentLinkedQueue<ByteBuffer>();
+		gather = new ByteBuffer[MAX_GATHER];
+		pendingBytes = new AtomicLong();
+		dirty = new AtomicBoolean();
+		input = ByteBuffer.allocate(64);
+	}
+	/**
+	 * GETTER: channel, closed
+	 */
+	SocketChannel getChannel() { return channel; }
+	boolean isClosed() { return closed; }
+	/**
+	 * queue a message from any thread, returns false if the client has too much waiting already;
+	 * the message is written once the selector thread flushes this connection
+	 */
+	boolean send(ByteBuffer message) {
+		if(closed || failed) {
+			return false;
+		}
+		if(pendingBytes.addAndGet(message.remaining()) > MAX_PENDING) {
+			failed = true;
+			return false;
+		}
+		outbox.add(message);
+		return true;
+	}
+	/**
+	 * selector thread: write as much as the socket takes, and wait for it to be writable if not all
+	 */
+	void flush() throws IOException {
+		if(failed) {
+			close();
+			return;
+		}
+		while(!closed) {
+			int count = 0;
+			for(ByteBuffer message : outbox) {
+				gather[count++] = message;
+				if(count == MAX_GATHER) {
+					break;
+				}
+			}
+			if(count == 0) {
+				break;
+			}
+			long written = channel.write(gather, 0, count);
+			pendingBytes.addAndGet(-written);
+			Arrays.fill(gather, 0, count, null);
+			// only this thread polls, so the head of the outbox is still what was gathered
+			boolean full = false;
+			for(int i = 0; i < count && !full; i++) {
+				if(outbox.peek().hasRemaining()) {
+					full = true;
+				} else {
+					outbox.poll();
+				}
+			}
+			if(full) {
+				break;
+			}
+		}
+		if(!closed) {
+			boolean waiting = !outbox.isEmpty();
+			int ops = key.interestOps();
+			key.interestOps(waiting ? ops | SelectionKey.OP_WRITE : ops & ~SelectionKey.OP_WRITE);
+		}
+	}
+	/**
+	 * selector thread: close socket, the match notices on its next tick
+	 */
+	void close() {
+		closed = true;
+		key.cancel();
+		try {
+			channel.close();
+		} catch(IOException e) {
+			// nothing more can be done about a socket that fails to close
+		}
+		outbox.clear();
+	}
+}
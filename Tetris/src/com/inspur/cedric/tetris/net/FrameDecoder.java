@@ -0,0 +1,154 @@
+package com.inspur.cedric.tetris.net;
+
+import java.nio.ByteBuffer;
+
+import com.inspur.cedric.tetris.GameModel.GameState;
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+
+/**
+ * state of a game rebuilt from the frames of a FrameEncoder, e.g. by a spectator;
+ * keeps the last keyframe, so a delta only needs that and not the deltas before it
+ */
+public class FrameDecoder {
+	private static final ShapeType[] TYPES = ShapeType.values();
+	private static final GameState[] STATES = GameState.values();
+	private final BitReader reader;
+	private int width;
+	private int height;
+	// indicates rows of last keyframe, and rows of last frame; a type is ordinal+1, GARBAGE+1 or 0 if the cell is empty
+	private long[] keyMasks;
+	private byte[][] keyTypes;
+	private long[] masks;
+	private byte[][] types;
+	// indicates which rows a delta has
+	private boolean[] changed;
+	private int keySequence;
+	private int sequence;
+	private boolean keyframe;
+	// state of last frame
+	private GameState gameState;
+	private ShapeType currentType;
+	private int currentOrientation;
+	private int currentRow;
+	private int currentCol;
+	private ShapeType holdType;
+	private boolean holdUsed;
+	private final ShapeType[] previews;
+	private int previewCount;
+	private int totalScores;
+	private int totalLines;
+	private int pendingGarbage;
+	/**
+	 * constructor
+	 */
+	public FrameDecoder() {
+		reader = new BitReader();
+		previews = new ShapeType[8];
+	}
+	/**
+	 * GETTER: width, height, sequence, board, current shape, hold, previews, totalScores, totalLines, pendingGarbage, gameState
+	 */
+	public int getWidth() { return width; }
+	public int getHeight() { return height; }
+	public int getSequence() { return sequence; }
+	// whether a keyframe has been decoded, nothing else can be read before
+	public boolean hasKeyframe() { return keyframe; }
+	public long getRowMask(int row) { return masks[row]; }
+	public ShapeType getType(int row, int col) {
+		int type = types[row][col];
+		return type == 0 || type == FrameEncoder.GARBAGE + 1 ? null : TYPES[type - 1];
+	}
+	public boolean isGarbage(int row, int col) { return types[row][col] == FrameEncoder.GARBAGE + 1; }
+	public GameState getGameState() { return gameState; }
+	public ShapeType getCurrentType() { return currentType; }
+	public int getCurrentOrientation() { return currentOrientation; }
+	public int getCurrentRow() { return currentRow; }
+	public int getCurrentCol() { return currentCol; }
+	public ShapeType getHoldType() { return holdType; }
+	public boolean isHoldUsed() { return holdUsed; }
+	public int getPreviewCount() { return previewCount; }
+	public ShapeType getPreview(int position) { return previews[position]; }
+	public int getTotalScores() { return totalScores; }
+	public int getTotalLines() { return totalLines; }
+	public int getPendingGarbage() { return pendingGarbage; }
+	/**
+	 * apply the frame at the position of the buffer; returns false, having read only its header,
+	 * for a delta of a keyframe this decoder has not seen, e.g. when it joined in the middle of a stream
+	 */
+	public boolean decode(ByteBuffer in) {
+		byte kind = in.get();
+		int frameSequence = in.getInt();
+		if(kind == FrameEncoder.KEYFRAME) {
+			int frameWidth = in.get() & 0xff, frameHeight = in.getShort() & 0xffff;
+			if(frameWidth != width || frameHeight != height) {
+				width = frameWidth;
+				height = frameHeight;
+				keyMasks = new long[height];
+				keyTypes = new byte[height][width];
+				masks = new long[height];
+				types = new byte[height][width];
+				changed = new boolean[height];
+			}
+		} else if(kind == FrameEncoder.DELTA) {
+			if(!keyframe || in.getInt() != keySequence) {
+				return false;
+			}
+		} else {
+			throw new IllegalArgumentException("unknown frame: " + kind);
+		}
+		sequence = frameSequence;
+		reader.reset(in);
+		readState();
+		if(kind == FrameEncoder.KEYFRAME) {
+			for(int row = 0; row < height; row++) {
+				readRow(row);
+			}
+			System.arraycopy(masks, 0, keyMasks, 0, height);
+			for(int row = 0; row < height; row++) {
+				System.arraycopy(types[row], 0, keyTypes[row], 0, width);
+			}
+			keySequence = sequence;
+			keyframe = true;
+		} else {
+			// start from keyframe, a delta has every row that differs from it
+			System.arraycopy(keyMasks, 0, masks, 0, height);
+			for(int row = 0; row < height; row++) {
+				System.arraycopy(keyTypes[row], 0, types[row], 0, width);
+			}
+			for(int row = 0; row < height; row++) {
+				changed[row] = reader.read(1) != 0;
+			}
+			for(int row = 0; row < height; row++) {
+				if(changed[row]) {
+					readRow(row);
+				}
+			}
+		}
+		return true;
+	}
+	private void readState() {
+		gameState = STATES[reader.read(2)];
+		currentType = TYPES[reader.read(3)];
+		currentOrientation = reader.read(2);
+		currentRow = reader.readSigned(16);
+		currentCol = reader.readSigned(8);
+		int hold = reader.read(3);
+		holdType = hold == 0 ? null : TYPES[hold - 1];
+		holdUsed = reader.read(1) != 0;
+		previewCount = reader.read(3);
+		for(int i = 0; i < previewCount; i++) {
+			previews[i] = TYPES[reader.read(3)];
+		}
+		totalScores = reader.read(32);
+		totalLines = reader.read(32);
+		pendingGarbage = reader.read(16);
+	}
+	private void readRow(int row) {
+		long mask = reader.readLong(width);
+		masks[row] = mask;
+		byte[] typeRow = types[row];
+		for(int col = 0; col < width; col++) {
+			typeRow[col] = (byte) ((mask & 1L << col) == 0 ? 0 : reader.read(3) + 1);
+		}
+	}
+}
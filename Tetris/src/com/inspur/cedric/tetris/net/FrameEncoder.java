@@ -0,0 +1,138 @@
+package com.inspur.cedric.tetris.net;
+
+import java.nio.ByteBuffer;
+
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+import com.inspur.cedric.tetris.GameSnapshot;
+
+/**
+ * turns snapshots of one game into compact frames: a keyframe holds the whole state, every later frame
+ * is a delta that holds the state but only the rows that differ from the last keyframe, so a delta can be
+ * applied on its own once its keyframe is known and lost deltas do no harm. a frame is
+ * [byte kind][int sequence], then for a keyframe [byte width][short height] and for a delta [int keyframe sequence],
+ * then bits, lowest first: game state (2), current type (3), orientation (2), row (16, signed), col (8, signed),
+ * hold type (3, 0 if none), hold used (1), previews (3) and type of each (3), scores (32), lines (32),
+ * pending garbage (16); then rows, which a keyframe has all of and a delta has those set in a mask of
+ * changed rows (height bits): the mask of occupied columns (width bits) and the type of each occupied cell (3, GARBAGE for
+ * a cell of a garbage line)
+ */
+public class FrameEncoder {
+	public static final byte KEYFRAME = 1;
+	public static final byte DELTA = 2;
+	// indicates type of a garbage cell, after the ordinals of the 7 shape types
+	public static final int GARBAGE = 7;
+	// indicates bits of the state before the rows, previews excluded
+	private static final int STATE_BITS = 2 + 3 + 2 + 16 + 8 + 3 + 1 + 3 + 32 + 32 + 16;
+	// indicates most frames between two keyframes
+	private final int keyInterval;
+	private final BitWriter writer;
+	// indicates which rows differ from keyframe, reused by every delta
+	private boolean[] changed;
+	private GameSnapshot keyframe;
+	private int keySequence;
+	private int sequence;
+	// indicates whether next frame must be a keyframe, e.g. for a spectator that has just joined
+	private volatile boolean keyRequested;
+	/**
+	 * constructor
+	 */
+	public FrameEncoder(int keyInterval) {
+		if(keyInterval < 1) {
+			throw new IllegalArgumentException("illegal keyframe interval: " + keyInterval);
+		}
+		this.keyInterval = keyInterval;
+		writer = new BitWriter();
+	}
+	/**
+	 * GETTER: sequence of last frame, sequence of last keyframe
+	 */
+	public int getSequence() { return sequence; }
+	public int getKeySequence() { return keySequence; }
+	/**
+	 * make the next frame a keyframe, may be called from any thread
+	 */
+	public void requestKeyframe() {
+		keyRequested = true;
+	}
+	/**
+	 * most bytes a frame of a board of the size takes
+	 */
+	public static int maxFrameSize(int width, int height) {
+		return 1 + 4 + 4 + (STATE_BITS + 3 * 6 + height + height * width * 4 + 7) / 8;
+	}
+	/**
+	 * write next frame of the game to the buffer, returns whether it is a keyframe; a delta is sent instead of a
+	 * keyframe unless the interval is over or more than half of the rows changed, as then it would not be much smaller
+	 */
+	public boolean encode(GameSnapshot snapshot, ByteBuffer out) {
+		int width = snapshot.getWidth(), height = snapshot.getHeight();
+		++sequence;
+		boolean key = keyRequested || keyframe == null || sequence - keySequence >= keyInterval;
+		if(!key) {
+			if(keyframe.getWidth() != width || keyframe.getHeight() != height) {
+				throw new IllegalArgumentException("board size changed: " + width + "x" + height);
+			}
+			if(changed == null || changed.length != height) {
+				changed = new boolean[height];
+			}
+			int count = 0;
+			for(int row = 0; row < height; row++) {
+				changed[row] = !snapshot.rowEquals(keyframe, row);
+				if(changed[row]) {
+					++count;
+				}
+			}
+			key = count * 2 > height;
+		}
+		out.put(key ? KEYFRAME : DELTA).putInt(sequence);
+		if(key) {
+			out.put((byte) width).putShort((short) height);
+		} else {
+			out.putInt(keySequence);
+		}
+		writer.reset(out);
+		writeState(snapshot);
+		if(!key) {
+			for(int row = 0; row < height; row++) {
+				writer.write(changed[row] ? 1 : 0, 1);
+			}
+		}
+		for(int row = 0; row < height; row++) {
+			if(key || changed[row]) {
+				writeRow(snapshot, row, width);
+			}
+		}
+		writer.flush();
+		if(key) {
+			keyframe = snapshot;
+			keySequence = sequence;
+			keyRequested = false;
+		}
+		return key;
+	}
+	private void writeState(GameSnapshot snapshot) {
+		writer.write(snapshot.getGameState().ordinal(), 2);
+		writer.write(snapshot.getCurrentType().ordinal(), 3);
+		writer.write(snapshot.getCurrentOrientation(), 2);
+		writer.write(snapshot.getCurrentRow(), 16);
+		writer.write(snapshot.getCurrentCol(), 8);
+		ShapeType holdType = snapshot.getHoldType();
+		writer.write(holdType == null ? 0 : holdType.ordinal() + 1, 3);
+		writer.write(snapshot.isHoldUsed() ? 1 : 0, 1);
+		writer.write(snapshot.getPreviewCount(), 3);
+		for(int i = 0; i < snapshot.getPreviewCount(); i++) {
+			writer.write(snapshot.getPreview(i).ordinal(), 3);
+		}
+		writer.write(snapshot.getTotalScores(), 32);
+		writer.write(snapshot.getTotalLines(), 32);
+		writer.write(snapshot.getPendingGarbage(), 16);
+	}
+	private void writeRow(GameSnapshot snapshot, int row, int width) {
+		long mask = snapshot.getRowMask(row);
+		writer.writeLong(mask, width);
+		for(long cells = mask; cells != 0; cells &= cells - 1) {
+			int col = Long.numberOfTrailingZeros(cells);
+			writer.write(snapshot.isGarbage(row, col) ? GARBAGE : snapshot.getType(row, col).ordinal(), 3);
+		}
+	}
+}
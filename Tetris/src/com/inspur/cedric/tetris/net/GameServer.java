@@ -0,0 +1,316 @@
+package com.inspur.cedric.tetris.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.inspur.cedric.tetris.GameLoop;
+import com.inspur.cedric.tetris.GameLoop.Input;
+import com.inspur.cedric.tetris.RuleSet;
+import com.inspur.cedric.tetris.metrics.Metrics;
+
+/**
+ * hosts versus matches for many clients: one selector thread accepts clients, reads their inputs
+ * and writes what the matches send, and a fixed pool of tick threads runs the matches, each thread
+ * a shard of them at GameLoop.TICKS_PER_SECOND; clients are paired in the order they arrive and
+ * are paired again after each match
+ */
+public class GameServer {
+	private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1) / GameLoop.TICKS_PER_SECOND;
+	private final RuleSet ruleSet;
+	private final ServerSocketChannel serverChannel;
+	private final Selector selector;
+	private final Shard[] shards;
+	private final ScheduledExecutorService tickers;
+	// connections with messages to write and connections whose match is over, handed to selector thread
+	private final Queue<Connection> dirty;
+	private final Queue<Connection> finished;
+	// indicates client waiting for an opponent, touched by selector thread only
+	private Connection waiting;
+	private long nextSeed;
+	private int nextShard;
+	private volatile boolean running;
+	private Thread thread;
+	// statistics
+	private final AtomicInteger connections;
+	private final AtomicInteger activeMatches;
+	private final AtomicLong finishedMatches;
+	private final AtomicLong frames;
+	// indicates matches ended by an error, which are counted in finishedMatches as well
+	private final AtomicLong brokenMatches;
+	/**
+	 * constructor, binds the port; 0 picks a free one
+	 */
+	public GameServer(RuleSet ruleSet, int port, int shards, long firstSeed) throws IOException {
+		int frameLength = Protocol.maxFrameLength(ruleSet.getWidth(), ruleSet.getHeight());
+		if(frameLength > Protocol.MAX_LENGTH) {
+			throw new IllegalArgumentException("a frame of a " + ruleSet.getWidth() + "x" + ruleSet.getHeight() + " board may take "
+					+ frameLength + " bytes, a message holds at most " + Protocol.MAX_LENGTH);
+		}
+		this.ruleSet = ruleSet;
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(port), 1024);
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		this.shards = new Shard[shards];
+		for(int i = 0; i < shards; i++) {
+			this.shards[i] = new Shard();
+		}
+		AtomicInteger threads = new AtomicInteger();
+		tickers = Executors.newScheduledThreadPool(shards, runnable -> {
+			Thread thread = new Thread(runnable, "game-tick-" + threads.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		dirty = new ConcurrentLinkedQueue<Connection>();
+		finished = new ConcurrentLinkedQueue<Connection>();
+		nextSeed = firstSeed;
+		connections = new AtomicInteger();
+		activeMatches = new AtomicInteger();
+		finishedMatches = new AtomicLong();
+		frames = new AtomicLong();
+		brokenMatches = new AtomicLong();
+	}
+	/**
+	 * GETTER: port, connections, activeMatches, finishedMatches, frames, brokenMatches
+	 */
+	public int getPort() { return serverChannel.socket().getLocalPort(); }
+	public int getConnections() { return connections.get(); }
+	public int getActiveMatches() { return activeMatches.get(); }
+	public long getFinishedMatches() { return finishedMatches.get(); }
+	public long getFrames() { return frames.get(); }
+	public long getBrokenMatches() { return brokenMatches.get(); }
+	public synchronized void start() {
+		if(thread == null) {
+			running = true;
+			for(Shard shard : shards) {
+				tickers.scheduleAtFixedRate(shard, TICK_NANOS, TICK_NANOS, TimeUnit.NANOSECONDS);
+			}
+			thread = new Thread(this::select, "game-server");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+	public synchronized void stop() {
+		running = false;
+		tickers.shutdownNow();
+		if(thread != null) {
+			selector.wakeup();
+			try {
+				thread.join();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			thread = null;
+		}
+		try {
+			for(SelectionKey key : selector.keys()) {
+				key.channel().close();
+			}
+			selector.close();
+		} catch(IOException e) {
+			// closing is best effort
+		}
+	}
+	// selector thread
+	private void select() {
+		while(running) {
+			try {
+				selector.select();
+			} catch(IOException e) {
+				throw new RuntimeException("selector failed", e);
+			}
+			Connection connection;
+			while((connection = finished.poll()) != null) {
+				connection.player = null;
+				pair(connection);
+			}
+			while((connection = dirty.poll()) != null) {
+				connection.dirty.set(false);
+				flush(connection);
+			}
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while(keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				if(!key.isValid()) {
+					continue;
+				}
+				if(key.isAcceptable()) {
+					accept();
+				} else {
+					connection = (Connection) key.attachment();
+					if(key.isReadable()) {
+						read(connection);
+					}
+					if(key.isValid() && key.isWritable()) {
+						flush(connection);
+					}
+				}
+			}
+		}
+	}
+	private void accept() {
+		try {
+			SocketChannel channel;
+			while((channel = serverChannel.accept()) != null) {
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+				Connection connection = new Connection(channel, key);
+				key.attach(connection);
+				connections.incrementAndGet();
+				pair(connection);
+			}
+		} catch(IOException e) {
+			// a client that fails while connecting is simply not accepted
+		}
+	}
+	// the first client waits, the next one plays against it
+	private void pair(Connection connection) {
+		if(connection.isClosed()) {
+			return;
+		}
+		if(waiting == null || waiting.isClosed()) {
+			waiting = connection;
+			return;
+		}
+		Match match = new Match(ruleSet, nextSeed++, waiting, connection);
+		waiting.player = match.getPlayer(0);
+		connection.player = match.getPlayer(1);
+		waiting = null;
+		activeMatches.incrementAndGet();
+		shards[nextShard].added.add(match);
+		nextShard = (nextShard + 1) % shards.length;
+	}
+	private void read(Connection connection) {
+		ByteBuffer input = connection.input;
+		int count;
+		try {
+			count = connection.getChannel().read(input);
+		} catch(IOException e) {
+			count = -1;
+		}
+		if(count < 0) {
+			close(connection);
+			return;
+		}
+		input.flip();
+		Match.Player player = connection.player;
+		while(input.hasRemaining()) {
+			byte command = input.get();
+			Input decoded = Protocol.decodeInput(command);
+			// inputs sent while waiting for an opponent are dropped
+			if(decoded != null && player != null) {
+				player.post(decoded, Protocol.isPressed(command));
+			}
+		}
+		input.clear();
+	}
+	private void flush(Connection connection) {
+		boolean closed = connection.isClosed();
+		try {
+			connection.flush();
+		} catch(IOException e) {
+			close(connection);
+			return;
+		}
+		// a client that fell too far behind is closed by flush
+		if(!closed && connection.isClosed()) {
+			connections.decrementAndGet();
+		}
+	}
+	private void close(Connection connection) {
+		if(!connection.isClosed()) {
+			connection.close();
+			connections.decrementAndGet();
+		}
+	}
+	// tick thread: message queued for the connection, the selector thread is woken up once per shard tick
+	private void queued(Connection connection) {
+		if(connection.dirty.compareAndSet(false, true)) {
+			dirty.add(connection);
+		}
+	}
+	/**
+	 * server entrance: GameServer [port] [tickThreads], rules are changed by system properties, see RuleSet.fromProperties
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : Protocol.DEFAULT_PORT;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		RuleSet ruleSet = RuleSet.fromProperties(System.getProperties());
+		Metrics.start();
+		GameServer server = new GameServer(ruleSet, port, threads, 0L);
+		server.start();
+		System.out.println("listening on port " + server.getPort() + " with " + threads + " tick threads, " + ruleSet);
+		while(true) {
+			Thread.sleep(10000);
+			System.out.println(server.getConnections() + " clients, " + server.getActiveMatches() + " matches, "
+					+ server.getFinishedMatches() + " finished, " + server.getBrokenMatches() + " broken, " + server.getFrames() + " frames");
+		}
+	}
+	/**********************************************************/
+	private class Shard implements Runnable {
+		// matches handed over by selector thread
+		private final Queue<Match> added = new ConcurrentLinkedQueue<Match>();
+		// indicates matches of this shard, touched by its tick only
+		private final List<Match> matches = new ArrayList<Match>();
+		@Override
+		public void run() {
+			Match match;
+			while((match = added.poll()) != null) {
+				match.start();
+				matches.add(match);
+			}
+			for(int i = matches.size() - 1; i >= 0; i--) {
+				match = matches.get(i);
+				boolean going;
+				try {
+					going = match.tick();
+				} catch(RuntimeException e) {
+					// one broken match must not stop the others of its shard
+					System.err.println("match " + match.getSeed() + " broken: " + e);
+					brokenMatches.incrementAndGet();
+					if(Metrics.ENABLED) {
+						Metrics.BROKEN_MATCHES.increment();
+					}
+					going = false;
+				}
+				if(match.hasSent()) {
+					frames.addAndGet(2);
+					for(int p = 0; p < 2; p++) {
+						queued(match.getPlayer(p).connection);
+					}
+				}
+				if(!going) {
+					// swap with the last one, order of matches does not matter
+					matches.set(i, matches.get(matches.size() - 1));
+					matches.remove(matches.size() - 1);
+					activeMatches.decrementAndGet();
+					finishedMatches.incrementAndGet();
+					for(int p = 0; p < 2; p++) {
+						finished.add(match.getPlayer(p).connection);
+					}
+				}
+			}
+			if(!dirty.isEmpty() || !finished.isEmpty()) {
+				selector.wakeup();
+			}
+		}
+	}
+}
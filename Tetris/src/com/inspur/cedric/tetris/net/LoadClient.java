@@ -0,0 +1,215 @@
+package com.inspur.cedric.tetris.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.inspur.cedric.tetris.GameLoop;
+import com.inspur.cedric.tetris.GameLoop.Input;
+import com.inspur.cedric.tetris.RuleSet;
+import com.inspur.cedric.tetris.random.SplitMix64;
+
+/**
+ * load generator: many clients on one selector thread press random keys and check every message
+ * the server sends them. without a host, a server is started in this process on a free port,
+ * so a whole loopback test is one command
+ */
+public class LoadClient {
+	private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1) / GameLoop.TICKS_PER_SECOND;
+	// indicates keys a client presses, hard drop more often than the others so that games end
+	private static final Input[] KEYS = { Input.LEFT, Input.RIGHT, Input.ROTATE, Input.SOFT_DROP, Input.HARD_DROP, Input.HARD_DROP };
+	private final Selector selector;
+	private final List<Client> clients;
+	private final SplitMix64 random;
+	// statistics
+	private long matches;
+	private long overs;
+	private long frames;
+	private long bytes;
+	/**
+	 * constructor, connects every client
+	 */
+	public LoadClient(InetSocketAddress address, int count, long seed) throws IOException {
+		selector = Selector.open();
+		clients = new ArrayList<Client>(count);
+		random = new SplitMix64(seed);
+		for(int i = 0; i < count; i++) {
+			SocketChannel channel = SocketChannel.open(address);
+			channel.socket().setTcpNoDelay(true);
+			channel.configureBlocking(false);
+			Client client = new Client(channel);
+			channel.register(selector, SelectionKey.OP_READ, client);
+			clients.add(client);
+		}
+	}
+	/**
+	 * GETTER: matches, overs, frames, bytes
+	 */
+	public long getMatches() { return matches; }
+	public long getOvers() { return overs; }
+	public long getFrames() { return frames; }
+	public long getBytes() { return bytes; }
+	/**
+	 * press keys once per tick and read whatever arrives, for the given time
+	 */
+	public void run(long nanos) throws IOException {
+		long end = System.nanoTime() + nanos, next = System.nanoTime();
+		while(System.nanoTime() - end < 0) {
+			if(System.nanoTime() - next >= 0) {
+				next += TICK_NANOS;
+				for(Client client : clients) {
+					client.press();
+				}
+			}
+			selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(next - System.nanoTime())));
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while(keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				if(key.isValid() && key.isReadable()) {
+					((Client) key.attachment()).read();
+				}
+			}
+		}
+	}
+	public void close() throws IOException {
+		for(Client client : clients) {
+			client.channel.close();
+		}
+		selector.close();
+	}
+	/**
+	 * entrance: LoadClient [clients] [seconds] [host] [port]; without host a server is started in this process
+	 */
+	public static void main(String[] args) throws IOException {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		GameServer server = null;
+		InetSocketAddress address;
+		if(args.length > 2) {
+			address = new InetSocketAddress(args[2], args.length > 3 ? Integer.parseInt(args[3]) : Protocol.DEFAULT_PORT);
+		} else {
+			server = new GameServer(RuleSet.fromProperties(System.getProperties()), 0, Runtime.getRuntime().availableProcessors(), 0L);
+			server.start();
+			address = new InetSocketAddress("localhost", server.getPort());
+		}
+		LoadClient loadClient = new LoadClient(address, count, 42);
+		for(int second = 1; second <= seconds; second++) {
+			long frames = loadClient.getFrames(), bytes = loadClient.getBytes();
+			loadClient.run(TimeUnit.SECONDS.toNanos(1));
+			StringBuilder sBuilder = new StringBuilder();
+			sBuilder.append(second).append("s: ").append(count).append(" clients, ").append(loadClient.getMatches()).append(" matches, ")
+					.append(loadClient.getOvers()).append(" over, ").append(loadClient.getFrames() - frames).append(" frames/s, ")
+					.append((loadClient.getBytes() - bytes) / 1024).append(" KB/s");
+			if(server != null) {
+				sBuilder.append(", server ").append(server.getActiveMatches()).append(" matches, ").append(server.getBrokenMatches())
+						.append(" broken");
+			}
+			System.out.println(sBuilder.toString());
+		}
+		loadClient.close();
+		if(server != null) {
+			server.stop();
+		}
+	}
+	/**********************************************************/
+	private class Client {
+		private final SocketChannel channel;
+		private final ByteBuffer input;
+		private final ByteBuffer output;
+		// indicates board size of current match, 0 while waiting for one
+		private int width;
+		private int height;
+		// indicates key held down since last tick, null if none
+		private Input held;
+		// indicates state of both games of current match
+		private final FrameDecoder[] decoders;
+		/**
+		 * constructor
+		 */
+		private Client(SocketChannel channel) {
+			this.channel = channel;
+			input = ByteBuffer.allocate(1 << 16);
+			output = ByteBuffer.allocate(2);
+			decoders = new FrameDecoder[2];
+		}
+		// release the key pressed last tick, and now and then press another one
+		private void press() throws IOException {
+			output.clear();
+			if(held != null) {
+				output.put(Protocol.encodeInput(held, false));
+				held = null;
+			}
+			if(width > 0 && random.nextInt(8) == 0) {
+				held = KEYS[random.nextInt(KEYS.length)];
+				output.put(Protocol.encodeInput(held, true));
+			}
+			output.flip();
+			// a key event that does not fit into the socket is dropped, like a lost key press
+			channel.write(output);
+		}
+		private void read() throws IOException {
+			int count = channel.read(input);
+			if(count < 0) {
+				throw new IOException("server closed connection");
+			}
+			bytes += count;
+			input.flip();
+			while(input.remaining() >= Protocol.HEADER && input.remaining() >= Protocol.HEADER + (input.getShort(input.position()) & 0xffff)) {
+				int length = input.getShort() & 0xffff;
+				int end = input.position() + length;
+				parse(input);
+				if(input.position() != end) {
+					throw new IllegalStateException("message of " + length + " bytes has " + (input.position() + length - end) + " bytes of content");
+				}
+			}
+			input.compact();
+		}
+		private void parse(ByteBuffer message) {
+			byte kind = message.get();
+			switch (kind) {
+			case Protocol.MATCH:
+				message.getLong();
+				message.get();
+				width = message.getShort();
+				height = message.getShort();
+				decoders[0] = new FrameDecoder();
+				decoders[1] = new FrameDecoder();
+				++matches;
+				break;
+			case Protocol.FRAME:
+				message.getInt();
+				FrameDecoder decoder = decoders[message.get()];
+				// the first frame of a game is a keyframe and no frame is lost, so every delta can be applied
+				if(!decoder.decode(message)) {
+					throw new IllegalStateException("delta of an unknown keyframe: " + decoder.getSequence());
+				}
+				if(decoder.getWidth() != width || decoder.getHeight() != height) {
+					throw new IllegalStateException("frame of a " + decoder.getWidth() + "x" + decoder.getHeight() + " board");
+				}
+				// full lines are erased before a frame is taken
+				for(int row = 0; row < height; row++) {
+					if(Long.bitCount(decoder.getRowMask(row)) == width) {
+						throw new IllegalStateException("full line in frame: " + row);
+					}
+				}
+				++frames;
+				break;
+			case Protocol.OVER:
+				message.get();
+				width = height = 0;
+				++overs;
+				break;
+			default:
+				throw new IllegalStateException("unknown message: " + kind);
+			}
+		}
+	}
+}
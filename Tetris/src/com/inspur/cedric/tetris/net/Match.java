@@ -0,0 +1,183 @@
+package com.inspur.cedric.tetris.net;
+
+import java.nio.ByteBuffer;
+
+import com.inspur.cedric.tetris.Board;
+import com.inspur.cedric.tetris.ClearResult;
+import com.inspur.cedric.tetris.ClearResult.TSpin;
+import com.inspur.cedric.tetris.GameLoop;
+import com.inspur.cedric.tetris.GameLoop.Input;
+import com.inspur.cedric.tetris.GameModel;
+import com.inspur.cedric.tetris.GameModel.Action;
+import com.inspur.cedric.tetris.GameModel.GameState;
+import com.inspur.cedric.tetris.GameShape;
+import com.inspur.cedric.tetris.GameSnapshot;
+import com.inspur.cedric.tetris.RuleSet;
+import com.inspur.cedric.tetris.metrics.Metrics;
+
+/**
+ * versus game of two players with the same seed: erasing lines sends garbage to the opponent,
+ * the first one to top out loses. ticked by one tick thread, which owns both models;
+ * only the changes since the last frame are sent to the players
+ */
+class Match {
+	// indicates garbage lines sent for erasing 0 to 4 lines, a full T-spin sends twice its lines
+	private static final int[] ATTACK = { 0, 0, 1, 2, 4 };
+	// indicates most frames between keyframes, one every 2 seconds while a game changes
+	private static final int KEY_INTERVAL = 2 * GameLoop.TICKS_PER_SECOND;
+	private final long seed;
+	private final Player[] players;
+	private int tick;
+	// indicates winner once the match is over, -1 while it goes on
+	private int winner;
+	// indicates whether last tick sent anything
+	private boolean sent;
+	/**
+	 * constructor
+	 */
+	Match(RuleSet ruleSet, long seed, Connection first, Connection second) {
+		this.seed = seed;
+		players = new Player[] { new Player(ruleSet, 0, first), new Player(ruleSet, 1, second) };
+		winner = -1;
+	}
+	/**
+	 * GETTER: seed, player, winner
+	 */
+	long getSeed() { return seed; }
+	Player getPlayer(int index) { return players[index]; }
+	boolean isOver() { return winner >= 0; }
+	boolean hasSent() { return sent; }
+	/**
+	 * tell both players the match starts
+	 */
+	void start() {
+		for(Player player : players) {
+			Board board = player.gameModel.getBoard();
+			ByteBuffer message = ByteBuffer.allocate(Protocol.HEADER + 1 + 8 + 1 + 2 + 2);
+			message.putShort((short) (message.capacity() - Protocol.HEADER)).put(Protocol.MATCH).putLong(seed)
+					.put((byte) player.index).putShort((short) board.getWidth()).putShort((short) board.getHeight());
+			message.flip();
+			player.connection.send(message);
+		}
+	}
+	/**
+	 * advance both games by one tick and send what changed, returns false once the match is over
+	 */
+	boolean tick() {
+		++tick;
+		for(Player player : players) {
+			long start = Metrics.now();
+			player.gameLoop.tick();
+			if(Metrics.ENABLED) {
+				Metrics.TICK.recordSince(start);
+			}
+		}
+		for(Player player : players) {
+			if(player.connection.isClosed() || player.gameModel.getGameState() == GameState.OVER) {
+				// both may top out in the same tick, the first one loses
+				winner = 1 - player.index;
+				break;
+			}
+		}
+		sent = false;
+		for(Player player : players) {
+			ByteBuffer frame = player.encodeFrame();
+			if(frame != null) {
+				send(frame);
+				sent = true;
+			}
+		}
+		if(winner >= 0) {
+			sent = true;
+			ByteBuffer message = ByteBuffer.allocate(Protocol.HEADER + 2);
+			message.putShort((short) 2).put(Protocol.OVER).put((byte) winner).flip();
+			send(message);
+			return false;
+		}
+		return true;
+	}
+	private void send(ByteBuffer message) {
+		for(Player player : players) {
+			// every connection gets its own position in the same bytes
+			player.connection.send(message.duplicate());
+		}
+	}
+	/**********************************************************/
+	class Player implements GameModel.Observer {
+		final int index;
+		final Connection connection;
+		final GameModel gameModel;
+		// indicates loop that applies inputs, DAS, gravity and lock delay; never started, ticked by the match
+		final GameLoop gameLoop;
+		// indicates what was sent last, so only changes are sent
+		private GameSnapshot sent;
+		private final FrameEncoder encoder;
+		private final ByteBuffer scratch;
+		private int sentPieces;
+		/**
+		 * constructor
+		 */
+		Player(RuleSet ruleSet, int index, Connection connection) {
+			this.index = index;
+			this.connection = connection;
+			gameModel = new GameModel(ruleSet, seed);
+			gameModel.setGameState(GameState.RUNNING);
+			gameModel.setObserver(this);
+			gameLoop = new GameLoop(gameModel, snapshot -> {}, null);
+			encoder = new FrameEncoder(KEY_INTERVAL);
+			scratch = ByteBuffer.allocate(Protocol.HEADER + Protocol.maxFrameLength(ruleSet.getWidth(), ruleSet.getHeight()));
+		}
+		/**
+		 * selector thread: input of the client
+		 */
+		void post(Input input, boolean pressed) {
+			gameLoop.post(input, pressed);
+		}
+		/**
+		 * a lock that erased lines first takes back garbage waiting for this player, the rest goes to the opponent
+		 */
+		@Override
+		public void action(GameModel gameModel, Action action) {
+			if(gameModel.getTotalPieces() == sentPieces) {
+				return;
+			}
+			sentPieces = gameModel.getTotalPieces();
+			ClearResult clear = gameModel.getLastClear();
+			int attack = clear.getTSpin() == TSpin.FULL ? 2 * clear.getLines() : ATTACK[clear.getLines()];
+			attack -= gameModel.cancelGarbage(attack);
+			if(attack > 0) {
+				players[1 - index].gameModel.addGarbage(attack);
+			}
+		}
+		// frame of the game of this player, null if nothing changed since last one
+		private ByteBuffer encodeFrame() {
+			if(sent != null && !changed()) {
+				return null;
+			}
+			sent = gameModel.snapshot();
+			scratch.clear();
+			scratch.putShort((short) 0).put(Protocol.FRAME).putInt(tick).put((byte) index);
+			encoder.encode(sent, scratch);
+			int length = scratch.position() - Protocol.HEADER;
+			if(length > Protocol.MAX_LENGTH) {
+				// GameServer refuses boards this tall, a wrapped length would desync the stream
+				throw new IllegalStateException("frame of " + length + " bytes does not fit a message");
+			}
+			scratch.putShort(0, (short) length);
+			scratch.flip();
+			// copied at its size, as messages may wait in the outbox for a while
+			ByteBuffer frame = ByteBuffer.allocate(scratch.remaining());
+			frame.put(scratch).flip();
+			return frame;
+		}
+		// board rows are compared by the encoder, only a changed version is needed here
+		private boolean changed() {
+			GameShape shape = gameModel.getCurrentShape();
+			return shape.getShapeType() != sent.getCurrentType() || shape.getOrientation() != sent.getCurrentOrientation()
+					|| shape.getRow() != sent.getCurrentRow() || shape.getCol() != sent.getCurrentCol()
+					|| gameModel.getBoard().getVersion() != sent.getBoardVersion() || gameModel.getTotalScores() != sent.getTotalScores()
+					|| gameModel.getPendingGarbage() != sent.getPendingGarbage() || gameModel.isHoldUsed() != sent.isHoldUsed()
+					|| gameModel.getGameState() != sent.getGameState();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.inspur.cedric.tetris.net;
+
+import com.inspur.cedric.tetris.GameLoop.Input;
+
+/**
+ * wire format between GameServer and its clients, all numbers big-endian.
+ * a client sends one byte per key event, ordinal of the input shifted left by one and
+ * the lowest bit set if the key was pressed; the server sends messages of
+ * [short length of the rest, unsigned][byte kind][payload]:
+ * <ul>
+ * <li>MATCH: long seed, byte player (0 or 1), short width, short height</li>
+ * <li>FRAME: int tick, byte player (0 or 1), then a frame of that player's game as written by FrameEncoder,
+ * sent in a tick only if the game changed</li>
+ * <li>OVER: byte winner, 0 or 1</li>
+ * </ul>
+ */
+public final class Protocol {
+	public static final int DEFAULT_PORT = 7420;
+	// kinds of message
+	public static final byte MATCH = 1;
+	public static final byte FRAME = 2;
+	public static final byte OVER = 3;
+	// indicates size of the length every message starts with, and the longest rest of a message it can hold
+	public static final int HEADER = 2;
+	public static final int MAX_LENGTH = 0xffff;
+	// indicates size of a FRAME message before its frame: kind, tick and player
+	public static final int FRAME_HEADER = 1 + 4 + 1;
+	private static final Input[] INPUTS = Input.values();
+	/**
+	 * constructor
+	 */
+	private Protocol() {
+	}
+	/**
+	 * longest rest of a FRAME message of a board of the size, which GameServer checks against MAX_LENGTH
+	 */
+	public static int maxFrameLength(int width, int height) {
+		return FRAME_HEADER + FrameEncoder.maxFrameSize(width, height);
+	}
+	public static byte encodeInput(Input input, boolean pressed) {
+		return (byte) (input.ordinal() << 1 | (pressed ? 1 : 0));
+	}
+	/**
+	 * input of a byte sent by a client, null if it is none a player may send
+	 */
+	public static Input decodeInput(byte command) {
+		int ordinal = (command & 0xff) >> 1;
+		if(ordinal >= INPUTS.length) {
+			return null;
+		}
+		switch (INPUTS[ordinal]) {
+		case LEFT:
+		case RIGHT:
+		case SOFT_DROP:
+		case ROTATE:
+		case HARD_DROP:
+		case HOLD:
+			return INPUTS[ordinal];
+		default:
+			// pause, restart and auto play are the server's business
+			return null;
+		}
+	}
+	public static boolean isPressed(byte command) {
+		return (command & 1) != 0;
+	}
+}
@@ -0,0 +1,46 @@
+package com.inspur.cedric.tetris.random;
+
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+
+/**
+ * 7-bag: every 7 shapes are one of each type in shuffled order, so a shape comes
+ * back after at most 12 others
+ */
+public class BagGenerator implements PieceGenerator {
+	private static final ShapeType[] TYPES = ShapeType.values();
+	private final SplitMix64 random;
+	// indicates current bag, and how many of it have been dealt
+	private final ShapeType[] bag;
+	private int dealt;
+	/**
+	 * constructor
+	 */
+	public BagGenerator(SplitMix64 random) {
+		this.random = random;
+		bag = TYPES.clone();
+		dealt = bag.length;
+	}
+	private BagGenerator(BagGenerator generator) {
+		random = new SplitMix64(generator.random.getState());
+		bag = generator.bag.clone();
+		dealt = generator.dealt;
+	}
+	@Override
+	public ShapeType next() {
+		if(dealt == bag.length) {
+			// Fisher-Yates, a fresh bag is a permutation of the previous one
+			for(int i = bag.length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				ShapeType shapeType = bag[i];
+				bag[i] = bag[j];
+				bag[j] = shapeType;
+			}
+			dealt = 0;
+		}
+		return bag[dealt++];
+	}
+	@Override
+	public PieceGenerator copy() {
+		return new BagGenerator(this);
+	}
+}
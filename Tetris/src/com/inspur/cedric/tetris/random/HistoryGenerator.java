@@ -0,0 +1,63 @@
+package com.inspur.cedric.tetris.random;
+
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+
+/**
+ * history randomizer: a shape that is among the last 4 is redrawn, up to ROLLS times,
+ * so repeats are rare but the sequence is not as predictable as a bag;
+ * history starts as Z S Z S and the first shape is never Z, S or O, so a game never opens with an overhang
+ */
+public class HistoryGenerator implements PieceGenerator {
+	private static final ShapeType[] TYPES = ShapeType.values();
+	// indicates how many times a shape in history is redrawn before it is accepted
+	private static final int ROLLS = 6;
+	private final SplitMix64 random;
+	// indicates last 4 shapes, oldest at position
+	private final ShapeType[] history;
+	private int position;
+	private boolean first;
+	/**
+	 * constructor
+	 */
+	public HistoryGenerator(SplitMix64 random) {
+		this.random = random;
+		history = new ShapeType[] { ShapeType.Z, ShapeType.S, ShapeType.Z, ShapeType.S };
+		first = true;
+	}
+	private HistoryGenerator(HistoryGenerator generator) {
+		random = new SplitMix64(generator.random.getState());
+		history = generator.history.clone();
+		position = generator.position;
+		first = generator.first;
+	}
+	@Override
+	public ShapeType next() {
+		ShapeType shapeType;
+		if(first) {
+			do {
+				shapeType = TYPES[random.nextInt(TYPES.length)];
+			} while(shapeType == ShapeType.Z || shapeType == ShapeType.S || shapeType == ShapeType.O);
+			first = false;
+		} else {
+			shapeType = TYPES[random.nextInt(TYPES.length)];
+			for(int roll = 1; roll < ROLLS && inHistory(shapeType); roll++) {
+				shapeType = TYPES[random.nextInt(TYPES.length)];
+			}
+		}
+		history[position] = shapeType;
+		position = (position + 1) & 3;
+		return shapeType;
+	}
+	private boolean inHistory(ShapeType shapeType) {
+		for(ShapeType recent : history) {
+			if(recent == shapeType) {
+				return true;
+			}
+		}
+		return false;
+	}
+	@Override
+	public PieceGenerator copy() {
+		return new HistoryGenerator(this);
+	}
+}
@@ -0,0 +1,26 @@
+package com.inspur.cedric.tetris.random;
+
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+
+/**
+ * source of the sequence of shapes of one game
+ */
+public interface PieceGenerator {
+	/**
+	 * next shape of the sequence
+	 */
+	ShapeType next();
+	/**
+	 * independent generator at the same point of the sequence, e.g. for snapshots
+	 * or for looking ahead without disturbing this one
+	 */
+	PieceGenerator copy();
+	/**
+	 * next length shapes of the sequence, e.g. to precompute a long queue at once
+	 */
+	default void next(ShapeType[] shapes, int offset, int length) {
+		for(int i = offset; i < offset + length; i++) {
+			shapes[i] = next();
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package com.inspur.cedric.tetris.random;
+
+/**
+ * SplitMix64: a 64-bit state advanced by a constant and hashed on output, so every number
+ * costs a few multiplications, the state is one long that snapshots can copy, and split
+ * derives statistically independent streams without any shared state between them;
+ * not thread-safe, every game owns its own streams
+ */
+public final class SplitMix64 {
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	// indicates position in the stream
+	private long state;
+	/**
+	 * constructor
+	 */
+	public SplitMix64(long seed) {
+		state = seed;
+	}
+	/**
+	 * GETTER & SETTER: state
+	 */
+	public long getState() { return state; }
+	public void setState(long state) { this.state = state; }
+	public long nextLong() {
+		return mix(state += GOLDEN_GAMMA);
+	}
+	/**
+	 * the hash every number of the stream is made by: a bijection of 64 bits in which every input bit
+	 * changes about half of the output bits, e.g. to hash a key
+	 */
+	public static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	/**
+	 * uniform number in [0, bound), without modulo bias
+	 */
+	public int nextInt(int bound) {
+		if(bound <= 0) {
+			throw new IllegalArgumentException("bound must be positive: " + bound);
+		}
+		// Lemire's multiply and shift, rejecting the few values that would be overrepresented
+		long m = (nextLong() >>> 32) * bound;
+		if((m & 0xFFFFFFFFL) < bound) {
+			long threshold = (0x100000000L - bound) % bound;
+			while((m & 0xFFFFFFFFL) < threshold) {
+				m = (nextLong() >>> 32) * bound;
+			}
+		}
+		return (int) (m >>> 32);
+	}
+	/**
+	 * uniform number in [0, 1), from the highest 53 bits
+	 */
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+	/**
+	 * new stream seeded from this one, this stream moves on by one number
+	 */
+	public SplitMix64 split() {
+		return new SplitMix64(nextLong());
+	}
+}
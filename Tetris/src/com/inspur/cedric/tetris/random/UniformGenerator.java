@@ -0,0 +1,25 @@
+package com.inspur.cedric.tetris.random;
+
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+
+/**
+ * every shape is drawn independently with equal chance, so droughts are unbounded
+ */
+public class UniformGenerator implements PieceGenerator {
+	private static final ShapeType[] TYPES = ShapeType.values();
+	private final SplitMix64 random;
+	/**
+	 * constructor
+	 */
+	public UniformGenerator(SplitMix64 random) {
+		this.random = random;
+	}
+	@Override
+	public ShapeType next() {
+		return TYPES[random.nextInt(TYPES.length)];
+	}
+	@Override
+	public PieceGenerator copy() {
+		return new UniformGenerator(new SplitMix64(random.getState()));
+	}
+}
@@ -0,0 +1,104 @@
+package com.inspur.cedric.tetris.replay;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.inspur.cedric.tetris.Board;
+import com.inspur.cedric.tetris.GameShape.ShapeType;
+
+/**
+ * binary replay format:
+ * <pre>
+ * header:     'T' 'R' 'P' VERSION, seed as zigzag varlong, varint length and bytes of RuleSet.toBytes
+ * event:      varlong (tickDelta &lt;&lt; 4 | code), code is the ordinal of GameModel.Action
+ * checkpoint: varlong (tickDelta &lt;&lt; 4 | CHECKPOINT), varint scores, lines, pieces, 8-byte board hash
+ * end:        varlong (tickDelta &lt;&lt; 4 | END)
+ * </pre>
+ * tickDelta is the number of loop ticks since the previous event, so a replay of
+ * a game played at human speed costs about one byte per action
+ */
+public final class ReplayFormat {
+	public static final int MAGIC = 'T' << 24 | 'R' << 16 | 'P' << 8;
+	// version 2: shapes come from the piece generators, seeds of version 1 give other shapes;
+	// version 3: 4-bit codes, room for HOLD and later actions;
+	// version 4: SOFT_DROP, and guideline scoring gives modern games other scores;
+	// version 5: rules in header, a replay is played by the rules it was recorded with
+	public static final int VERSION = 5;
+	// indicates longest rules in a header, a table of RuleSet.MAX_LEVELS levels fits
+	public static final int MAX_RULES = 4096;
+	// codes after the ones of GameModel.Action
+	public static final int CHECKPOINT = 14;
+	public static final int END = 15;
+	public static final int CODE_BITS = 4;
+	// indicates type a garbage cell is hashed as
+	private static final int GARBAGE = ShapeType.values().length;
+	/**
+	 * constructor
+	 */
+	private ReplayFormat() {
+	}
+	/**
+	 * varint of 7 bits per byte, lowest group first
+	 */
+	public static void writeVarLong(OutputStream out, long value) throws IOException {
+		while((value & ~0x7FL) != 0) {
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+	public static long readVarLong(InputStream in) throws IOException {
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if(b < 0) {
+				throw new EOFException("replay ends in the middle of a number");
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("malformed varint");
+	}
+	public static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+	public static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+	public static void writeLong(OutputStream out, long value) throws IOException {
+		for(int shift = 56; shift >= 0; shift -= 8) {
+			out.write((int) (value >>> shift) & 0xFF);
+		}
+	}
+	public static long readLong(InputStream in) throws IOException {
+		long value = 0;
+		for(int i = 0; i < 8; i++) {
+			int b = in.read();
+			if(b < 0) {
+				throw new EOFException("replay ends in the middle of a number");
+			}
+			value = value << 8 | b;
+		}
+		return value;
+	}
+	/**
+	 * FNV-1a hash of occupancy and shape type of every cell, garbage counts as a type after the shape types
+	 */
+	public static long boardHash(Board board) {
+		long hash = 0xcbf29ce484222325L;
+		for(int row = 0; row < board.getHeight(); row++) {
+			long mask = board.getRowMask(row);
+			hash = (hash ^ mask) * 0x100000001b3L;
+			while(mask != 0) {
+				int col = Long.numberOfTrailingZeros(mask);
+				hash = (hash ^ (board.isGarbage(row, col) ? GARBAGE : board.getType(row, col).ordinal())) * 0x100000001b3L;
+				mask &= mask - 1;
+			}
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,199 @@
+package com.inspur.cedric.tetris.replay;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import com.inspur.cedric.tetris.GameModel;
+import com.inspur.cedric.tetris.GameModel.Action;
+import com.inspur.cedric.tetris.RuleSet;
+
+/**
+ * re-executes a replay on a headless model as fast as possible and verifies every checkpoint
+ */
+public class ReplayPlayer {
+	private static final Action[] ACTIONS = Action.values();
+	/**
+	 * constructor
+	 */
+	private ReplayPlayer() {
+	}
+	/**
+	 * play a whole replay by the rules it was recorded with, IOException is thrown if the replay is malformed
+	 */
+	public static Result play(InputStream in) throws IOException {
+		if(!(in instanceof BufferedInputStream)) {
+			in = new BufferedInputStream(in);
+		}
+		int magic = in.read() << 24 | in.read() << 16 | in.read() << 8;
+		int version = in.read();
+		if(magic != ReplayFormat.MAGIC || version != ReplayFormat.VERSION) {
+			throw new IOException("not a replay of version " + ReplayFormat.VERSION);
+		}
+		long seed = ReplayFormat.unzigzag(ReplayFormat.readVarLong(in));
+		RuleSet ruleSet = readRules(in);
+		GameModel gameModel = new GameModel(ruleSet, seed);
+		long ticks = 0, actions = 0;
+		int checkpoints = 0;
+		String mismatch = null;
+		while(true) {
+			long event = ReplayFormat.readVarLong(in);
+			ticks += event >>> ReplayFormat.CODE_BITS;
+			int code = (int) (event & ((1 << ReplayFormat.CODE_BITS) - 1));
+			if(code == ReplayFormat.END) {
+				break;
+			} else if(code == ReplayFormat.CHECKPOINT) {
+				int scores = (int) ReplayFormat.readVarLong(in);
+				int lines = (int) ReplayFormat.readVarLong(in);
+				int pieces = (int) ReplayFormat.readVarLong(in);
+				long hash = ReplayFormat.readLong(in);
+				++checkpoints;
+				if(mismatch == null) {
+					mismatch = mismatchOf(gameModel, scores, lines, pieces, hash);
+					if(mismatch != null) {
+						mismatch = "checkpoint " + checkpoints + " at tick " + ticks + " expects " + mismatch;
+					}
+				}
+			} else if(code < ACTIONS.length) {
+				apply(gameModel, ACTIONS[code]);
+				++actions;
+			} else {
+				throw new IOException("unknown event code " + code);
+			}
+		}
+		return new Result(seed, ticks, actions, checkpoints, gameModel.getTotalScores(), mismatch);
+	}
+	// fields of a checkpoint that differ from the game, as "scores 120 but replay has 80, ...", null if none
+	private static String mismatchOf(GameModel gameModel, int scores, int lines, int pieces, long hash) {
+		StringBuilder sBuilder = new StringBuilder();
+		appendMismatch(sBuilder, "scores", scores, gameModel.getTotalScores());
+		appendMismatch(sBuilder, "lines", lines, gameModel.getTotalLines());
+		appendMismatch(sBuilder, "pieces", pieces, gameModel.getTotalPieces());
+		long boardHash = ReplayFormat.boardHash(gameModel.getBoard());
+		if(hash != boardHash) {
+			sBuilder.append(sBuilder.length() == 0 ? "" : ", ").append("board hash ").append(Long.toHexString(hash))
+					.append(" but replay has ").append(Long.toHexString(boardHash));
+		}
+		return sBuilder.length() == 0 ? null : sBuilder.toString();
+	}
+	private static void appendMismatch(StringBuilder sBuilder, String field, long expected, long actual) {
+		if(expected != actual) {
+			sBuilder.append(sBuilder.length() == 0 ? "" : ", ").append(field).append(" ").append(expected)
+					.append(" but replay has ").append(actual);
+		}
+	}
+	private static RuleSet readRules(InputStream in) throws IOException {
+		long length = ReplayFormat.readVarLong(in);
+		if(length < 0 || length > ReplayFormat.MAX_RULES) {
+			throw new IOException("bad length of rules: " + length);
+		}
+		byte[] rules = new byte[(int) length];
+		for(int read = 0; read < rules.length; ) {
+			int n = in.read(rules, read, rules.length - read);
+			if(n < 0) {
+				throw new EOFException("replay ends in the middle of rules");
+			}
+			read += n;
+		}
+		try {
+			return RuleSet.fromBytes(ByteBuffer.wrap(rules));
+		} catch(IllegalArgumentException e) {
+			throw new IOException("bad rules: " + e.getMessage(), e);
+		}
+	}
+	private static void apply(GameModel gameModel, Action action) {
+		switch (action) {
+		case LEFT:
+			gameModel.moveLeft();
+			break;
+		case RIGHT:
+			gameModel.moveRight();
+			break;
+		case ROTATE:
+			gameModel.rotate();
+			break;
+		case DOWN:
+			gameModel.moveDown();
+			break;
+		case DROP:
+			gameModel.moveDownToBottom();
+			break;
+		case RESET:
+			gameModel.reset();
+			break;
+		case HOLD:
+			gameModel.hold();
+			break;
+		case SOFT_DROP:
+			gameModel.softDrop();
+			break;
+		default:
+			break;
+		}
+	}
+	/**
+	 * verify replay files: ReplayPlayer file..., each by the rules it was recorded with
+	 */
+	public static void main(String[] args) throws IOException {
+		long start = System.nanoTime(), actions = 0;
+		int failed = 0;
+		for(String file : args) {
+			try(InputStream in = new FileInputStream(file)) {
+				Result result = play(in);
+				actions += result.getActions();
+				if(!result.isVerified()) {
+					++failed;
+				}
+				System.out.println(file + ": " + result);
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d replays, %d failed, %.0f actions/s%n", args.length, failed, actions / seconds);
+	}
+	/**********************************************************/
+	public static class Result {
+		private final long seed;
+		private final long ticks;
+		private final long actions;
+		private final int checkpoints;
+		private final int totalScores;
+		// indicates first checkpoint that did not match, null if all matched
+		private final String mismatch;
+		/**
+		 * constructor
+		 */
+		private Result(long seed, long ticks, long actions, int checkpoints, int totalScores, String mismatch) {
+			this.seed = seed;
+			this.ticks = ticks;
+			this.actions = actions;
+			this.checkpoints = checkpoints;
+			this.totalScores = totalScores;
+			this.mismatch = mismatch;
+		}
+		/**
+		 * GETTER: seed, ticks, actions, checkpoints, totalScores, mismatch
+		 */
+		public long getSeed() { return seed; }
+		public long getTicks() { return ticks; }
+		public long getActions() { return actions; }
+		public int getCheckpoints() { return checkpoints; }
+		public int getTotalScores() { return totalScores; }
+		public String getMismatch() { return mismatch; }
+		public boolean isVerified() { return mismatch == null; }
+		/**
+		 * toString override
+		 */
+		@Override
+		public String toString() {
+			StringBuilder sBuilder = new StringBuilder();
+			sBuilder.append("replay: ").append("(seed ").append(seed).append(", ticks ").append(ticks)
+					.append(", actions ").append(actions).append(", checkpoints ").append(checkpoints)
+					.append(", scores ").append(totalScores).append(", ")
+					.append(mismatch == null ? "verified" : mismatch).append(")");
+			return sBuilder.toString();
+		}
+	}
+}
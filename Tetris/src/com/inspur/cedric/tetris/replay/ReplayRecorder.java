@@ -0,0 +1,104 @@
+package com.inspur.cedric.tetris.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.LongSupplier;
+
+import com.inspur.cedric.tetris.GameModel;
+import com.inspur.cedric.tetris.GameModel.Action;
+import com.inspur.cedric.tetris.GameModel.GameState;
+import com.inspur.cedric.tetris.RuleSet;
+
+/**
+ * records every action of a model, with the tick it happened at, in replay format;
+ * a checkpoint of score and board is written whenever a game is over and on close
+ */
+public class ReplayRecorder implements GameModel.Observer, Closeable {
+	private final OutputStream out;
+	// indicates where ticks come from, e.g. a game loop; null records every action at tick 0
+	private final LongSupplier clock;
+	private long lastTick;
+	// indicates whether current game already has its game-over checkpoint
+	private boolean checkpointed;
+	private boolean closed;
+	// indicates first error of writing, recording stops after it
+	private IOException error;
+	/**
+	 * constructor, writes header right away
+	 */
+	public ReplayRecorder(OutputStream out, RuleSet ruleSet, long seed, LongSupplier clock) throws IOException {
+		this.out = new BufferedOutputStream(out);
+		this.clock = clock;
+		this.out.write(ReplayFormat.MAGIC >>> 24);
+		this.out.write(ReplayFormat.MAGIC >>> 16 & 0xFF);
+		this.out.write(ReplayFormat.MAGIC >>> 8 & 0xFF);
+		this.out.write(ReplayFormat.VERSION);
+		ReplayFormat.writeVarLong(this.out, ReplayFormat.zigzag(seed));
+		byte[] rules = ruleSet.toBytes();
+		ReplayFormat.writeVarLong(this.out, rules.length);
+		this.out.write(rules);
+		lastTick = now();
+	}
+	/**
+	 * GETTER: error
+	 */
+	public synchronized IOException getError() { return error; }
+	/**
+	 * record an action of the model, an IOException stops recording instead of breaking the game
+	 */
+	@Override
+	public synchronized void action(GameModel gameModel, Action action) {
+		if(closed || error != null) {
+			return;
+		}
+		try {
+			writeEvent(action.ordinal());
+			if(action == Action.RESET) {
+				checkpointed = false;
+			} else if(gameModel.getGameState() == GameState.OVER && !checkpointed) {
+				writeCheckpoint(gameModel);
+				checkpointed = true;
+			}
+		} catch(IOException e) {
+			error = e;
+		}
+	}
+	/**
+	 * write a checkpoint of the model now, e.g. before close
+	 */
+	public synchronized void checkpoint(GameModel gameModel) throws IOException {
+		if(!closed) {
+			writeCheckpoint(gameModel);
+		}
+	}
+	@Override
+	public synchronized void close() throws IOException {
+		if(!closed) {
+			closed = true;
+			try {
+				if(error == null) {
+					writeEvent(ReplayFormat.END);
+				}
+			} finally {
+				out.close();
+			}
+		}
+	}
+	private void writeEvent(int code) throws IOException {
+		long tick = now();
+		ReplayFormat.writeVarLong(out, (tick - lastTick) << ReplayFormat.CODE_BITS | code);
+		lastTick = tick;
+	}
+	private void writeCheckpoint(GameModel gameModel) throws IOException {
+		writeEvent(ReplayFormat.CHECKPOINT);
+		ReplayFormat.writeVarLong(out, gameModel.getTotalScores());
+		ReplayFormat.writeVarLong(out, gameModel.getTotalLines());
+		ReplayFormat.writeVarLong(out, gameModel.getTotalPieces());
+		ReplayFormat.writeLong(out, ReplayFormat.boardHash(gameModel.getBoard()));
+	}
+	private long now() {
+		return clock == null ? 0L : clock.getAsLong();
+	}
+}
@@ -0,0 +1,107 @@
+package com.inspur.cedric.tetris.sim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.inspur.cedric.tetris.GameModel;
+import com.inspur.cedric.tetris.GameModel.GameState;
+import com.inspur.cedric.tetris.RuleSet;
+import com.inspur.cedric.tetris.metrics.Metrics;
+
+/**
+ * plays games headlessly, one after another, against a move policy
+ */
+public class BatchRunner {
+	// indicates rules every game is played by
+	private final RuleSet ruleSet;
+	// indicates how many shapes a game may pack before it is stopped
+	private final int maxPieces;
+	/**
+	 * constructor
+	 */
+	public BatchRunner(int maxPieces) {
+		this(RuleSet.CLASSIC, maxPieces);
+	}
+	public BatchRunner(RuleSet ruleSet, int maxPieces) {
+		if(maxPieces < 1) {
+			throw new IllegalArgumentException("maxPieces must be positive: " + maxPieces);
+		}
+		this.ruleSet = ruleSet;
+		this.maxPieces = maxPieces;
+	}
+	/**
+	 * GETTER: ruleSet, maxPieces
+	 */
+	public RuleSet getRuleSet() { return ruleSet; }
+	public int getMaxPieces() { return maxPieces; }
+	/**
+	 * play one game from the seed
+	 */
+	public GameStats play(long seed, MovePolicy policy) {
+		return play(new GameModel(ruleSet, seed), policy);
+	}
+	/**
+	 * play one game on a fresh model, e.g. one with an observer attached
+	 */
+	public GameStats play(GameModel gameModel, MovePolicy policy) {
+		long start = System.nanoTime();
+		long seed = gameModel.getSeed();
+		gameModel.setGameState(GameState.RUNNING);
+		policy.newGame(seed);
+		while(gameModel.getGameState() != GameState.OVER && gameModel.getTotalPieces() < maxPieces) {
+			int pieces = gameModel.getTotalPieces();
+			policy.play(gameModel);
+			// gravity, unless the policy has packed the shape itself
+			if(gameModel.getTotalPieces() == pieces && gameModel.getGameState() != GameState.OVER) {
+				gameModel.moveDown();
+			}
+		}
+		return new GameStats(seed, gameModel.getTotalScores(), gameModel.getTotalLines(), gameModel.getTotalPieces(),
+				gameModel.getGameState() == GameState.OVER, System.nanoTime() - start);
+	}
+	/**
+	 * play one game for each seed, stats are returned in the order of seeds
+	 */
+	public List<GameStats> run(long[] seeds, MovePolicy policy) {
+		List<GameStats> stats = new ArrayList<>(seeds.length);
+		for(long seed : seeds) {
+			stats.add(play(seed, policy));
+		}
+		return stats;
+	}
+	/**
+	 * play games seeded firstSeed, firstSeed+1, ..., firstSeed+games-1
+	 */
+	public List<GameStats> run(long firstSeed, int games, MovePolicy policy) {
+		return run(seeds(firstSeed, games), policy);
+	}
+	public static long[] seeds(long firstSeed, int games) {
+		long[] seeds = new long[games];
+		for(int i = 0; i < games; i++) {
+			seeds[i] = firstSeed + i;
+		}
+		return seeds;
+	}
+	/**
+	 * headless entrance: BatchRunner [games] [firstSeed] [maxPieces] [threads],
+	 * rules are changed by system properties, see RuleSet.fromProperties
+	 */
+	public static void main(String[] args) {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		long firstSeed = args.length > 1 ? Long.parseLong(args[1]) : 0L;
+		int maxPieces = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+		RuleSet ruleSet = RuleSet.fromProperties(System.getProperties());
+		Metrics.start();
+		long start = System.nanoTime();
+		List<GameStats> stats;
+		if(threads > 1) {
+			ParallelSimulator simulator = new ParallelSimulator(ruleSet, maxPieces, threads);
+			stats = simulator.run(firstSeed, games, RandomPolicy::new);
+			simulator.shutdown();
+		} else {
+			stats = new BatchRunner(ruleSet, maxPieces).run(firstSeed, games, new RandomPolicy());
+		}
+		System.out.println(Summary.of(stats, System.nanoTime() - start));
+	}
+}
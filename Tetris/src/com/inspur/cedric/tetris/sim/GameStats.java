@@ -0,0 +1,48 @@
+package com.inspur.cedric.tetris.sim;
+
+/**
+ * result of one simulated game
+ */
+public class GameStats {
+	// indicates which seed the game was played from
+	private final long seed;
+	// indicates final score, erased lines and packed shapes of the game
+	private final int scores;
+	private final int lines;
+	private final int pieces;
+	// indicates whether the game ended by game over rather than the piece limit
+	private final boolean over;
+	// indicates how long the game took in nanoseconds
+	private final long nanos;
+	/**
+	 * constructor
+	 */
+	public GameStats(long seed, int scores, int lines, int pieces, boolean over, long nanos) {
+		this.seed = seed;
+		this.scores = scores;
+		this.lines = lines;
+		this.pieces = pieces;
+		this.over = over;
+		this.nanos = nanos;
+	}
+	/**
+	 * GETTER: seed, scores, lines, pieces, over, nanos
+	 */
+	public long getSeed() { return seed; }
+	public int getScores() { return scores; }
+	public int getLines() { return lines; }
+	public int getPieces() { return pieces; }
+	public boolean isOver() { return over; }
+	public long getNanos() { return nanos; }
+	/**
+	 * toString override
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sBuilder = new StringBuilder();
+		sBuilder.append("game: ").append("(seed ").append(seed).append(", scores ").append(scores)
+				.append(", lines ").append(lines).append(", pieces ").append(pieces)
+				.append(over ? ", over" : ", limit").append(")");
+		return sBuilder.toString();
+	}
+}
@@ -0,0 +1,18 @@
+package com.inspur.cedric.tetris.sim;
+
+import com.inspur.cedric.tetris.GameModel;
+
+/**
+ * decides the moves of a simulated player
+ */
+public interface MovePolicy {
+	/**
+	 * called once before each game with the seed of that game
+	 */
+	void newGame(long seed);
+	/**
+	 * called once per step, the policy may move, rotate or drop the current shape;
+	 * if the shape is still falling afterwards, the runner applies one step of gravity
+	 */
+	void play(GameModel gameModel);
+}
@@ -0,0 +1,109 @@
+package com.inspur.cedric.tetris.sim;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import com.inspur.cedric.tetris.RuleSet;
+
+/**
+ * plays games on all cores with a fork/join pool; every game owns its model and
+ * every worker owns its policy, so the stats of a seed do not depend on the number
+ * of threads or on which thread played it
+ */
+public class ParallelSimulator {
+	// indicates how many leaf tasks each thread gets, more tasks balance long and short games better
+	private static final int TASKS_PER_THREAD = 8;
+	// indicates which runner plays a single game
+	private final BatchRunner batchRunner;
+	// indicates which pool the games run in
+	private final ForkJoinPool pool;
+	/**
+	 * constructor
+	 */
+	public ParallelSimulator(int maxPieces) {
+		this(maxPieces, Runtime.getRuntime().availableProcessors());
+	}
+	public ParallelSimulator(int maxPieces, int parallelism) {
+		this(RuleSet.CLASSIC, maxPieces, parallelism);
+	}
+	public ParallelSimulator(RuleSet ruleSet, int maxPieces, int parallelism) {
+		batchRunner = new BatchRunner(ruleSet, maxPieces);
+		pool = new ForkJoinPool(parallelism);
+	}
+	/**
+	 * GETTER: parallelism
+	 */
+	public int getParallelism() { return pool.getParallelism(); }
+	/**
+	 * play one game for each seed, stats are returned in the order of seeds;
+	 * policies are created on demand, one per leaf task, and never shared between threads
+	 */
+	public List<GameStats> run(long[] seeds, Supplier<? extends MovePolicy> policies) {
+		GameStats[] stats = new GameStats[seeds.length];
+		int threshold = Math.max(1, seeds.length / (pool.getParallelism() * TASKS_PER_THREAD));
+		pool.invoke(new SimulateTask(seeds, stats, 0, seeds.length, threshold, policies, null));
+		return Arrays.asList(stats);
+	}
+	/**
+	 * play one game for each seed with the policy made for its index, e.g. to compare policies on
+	 * the same seeds; every game gets a policy of its own
+	 */
+	public List<GameStats> run(long[] seeds, IntFunction<? extends MovePolicy> policies) {
+		GameStats[] stats = new GameStats[seeds.length];
+		int threshold = Math.max(1, seeds.length / (pool.getParallelism() * TASKS_PER_THREAD));
+		pool.invoke(new SimulateTask(seeds, stats, 0, seeds.length, threshold, null, policies));
+		return Arrays.asList(stats);
+	}
+	public List<GameStats> run(long firstSeed, int games, Supplier<? extends MovePolicy> policies) {
+		return run(BatchRunner.seeds(firstSeed, games), policies);
+	}
+	public void shutdown() {
+		pool.shutdown();
+	}
+	/**********************************************************/
+	private class SimulateTask extends RecursiveAction {
+		/**
+		 * default UID
+		 */
+		private static final long serialVersionUID = 1L;
+		private final long[] seeds;
+		private final GameStats[] stats;
+		// indicates range [from, to) of seeds this task plays
+		private final int from;
+		private final int to;
+		private final int threshold;
+		// indicates where policies come from, one per leaf task or one per game
+		private final Supplier<? extends MovePolicy> policies;
+		private final IntFunction<? extends MovePolicy> gamePolicies;
+		/**
+		 * constructor
+		 */
+		private SimulateTask(long[] seeds, GameStats[] stats, int from, int to, int threshold,
+				Supplier<? extends MovePolicy> policies, IntFunction<? extends MovePolicy> gamePolicies) {
+			this.seeds = seeds;
+			this.stats = stats;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+			this.policies = policies;
+			this.gamePolicies = gamePolicies;
+		}
+		@Override
+		protected void compute() {
+			if(to - from <= threshold) {
+				MovePolicy policy = policies == null ? null : policies.get();
+				for(int i = from; i < to; i++) {
+					stats[i] = batchRunner.play(seeds[i], policy == null ? gamePolicies.apply(i) : policy);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new SimulateTask(seeds, stats, from, middle, threshold, policies, gamePolicies),
+						new SimulateTask(seeds, stats, middle, to, threshold, policies, gamePolicies));
+			}
+		}
+	}
+}
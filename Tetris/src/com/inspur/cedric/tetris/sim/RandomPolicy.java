@@ -0,0 +1,39 @@
+package com.inspur.cedric.tetris.sim;
+
+import java.util.Random;
+
+import com.inspur.cedric.tetris.GameModel;
+
+/**
+ * baseline policy: rotates and shifts the current shape randomly, then drops it
+ */
+public class RandomPolicy implements MovePolicy {
+	// random of the current game
+	private Random random;
+	/**
+	 * constructor
+	 */
+	public RandomPolicy() {
+		random = new Random(0);
+	}
+	@Override
+	public void newGame(long seed) {
+		random.setSeed(seed);
+	}
+	@Override
+	public void play(GameModel gameModel) {
+		int rotations = random.nextInt(4);
+		for(int i = 0; i < rotations; i++) {
+			gameModel.rotate();
+		}
+		int width = gameModel.getBoard().getWidth();
+		int shift = random.nextInt(width) - width / 2;
+		for(int i = 0; i < shift; i++) {
+			gameModel.moveRight();
+		}
+		for(int i = 0; i > shift; i--) {
+			gameModel.moveLeft();
+		}
+		gameModel.moveDownToBottom();
+	}
+}
@@ -0,0 +1,65 @@
+package com.inspur.cedric.tetris.sim;
+
+import java.util.List;
+
+/**
+ * aggregated stats of a batch of games
+ */
+public class Summary {
+	private final int games;
+	private final long pieces;
+	private final long lines;
+	private final long totalScores;
+	private final int minScores;
+	private final int maxScores;
+	// indicates wall-clock time the batch took in nanoseconds
+	private final long wallNanos;
+	/**
+	 * constructor
+	 */
+	private Summary(int games, long pieces, long lines, long totalScores, int minScores, int maxScores, long wallNanos) {
+		this.games = games;
+		this.pieces = pieces;
+		this.lines = lines;
+		this.totalScores = totalScores;
+		this.minScores = minScores;
+		this.maxScores = maxScores;
+		this.wallNanos = wallNanos;
+	}
+	/**
+	 * aggregate stats of a batch which took wallNanos to play
+	 */
+	public static Summary of(List<GameStats> stats, long wallNanos) {
+		long pieces = 0, lines = 0, totalScores = 0;
+		int minScores = stats.isEmpty() ? 0 : Integer.MAX_VALUE, maxScores = 0;
+		for(GameStats stat : stats) {
+			pieces += stat.getPieces();
+			lines += stat.getLines();
+			totalScores += stat.getScores();
+			minScores = Math.min(minScores, stat.getScores());
+			maxScores = Math.max(maxScores, stat.getScores());
+		}
+		return new Summary(stats.size(), pieces, lines, totalScores, minScores, maxScores, wallNanos);
+	}
+	/**
+	 * GETTER: games, pieces, lines, totalScores, minScores, maxScores, wallNanos
+	 */
+	public int getGames() { return games; }
+	public long getPieces() { return pieces; }
+	public long getLines() { return lines; }
+	public long getTotalScores() { return totalScores; }
+	public int getMinScores() { return minScores; }
+	public int getMaxScores() { return maxScores; }
+	public long getWallNanos() { return wallNanos; }
+	public double getAverageScores() { return games == 0 ? 0 : (double) totalScores / games; }
+	public double getGamesPerSecond() { return wallNanos == 0 ? 0 : games * 1e9 / wallNanos; }
+	public double getPiecesPerSecond() { return wallNanos == 0 ? 0 : pieces * 1e9 / wallNanos; }
+	/**
+	 * toString override
+	 */
+	@Override
+	public String toString() {
+		return String.format("%d games, %d pieces, %d lines, scores avg %.2f min %d max %d, %.0f games/s, %.0f pieces/s",
+				games, pieces, lines, getAverageScores(), minScores, maxScores, getGamesPerSecond(), getPiecesPerSecond());
+	}
+}